@@ -0,0 +1,378 @@
+package com.satergo.jledger.codec.processor;
+
+import com.satergo.jledger.codec.APDUCodec;
+import com.satergo.jledger.codec.CountPrefixed;
+import com.satergo.jledger.codec.Length;
+import com.satergo.jledger.codec.U16;
+import com.satergo.jledger.codec.U8;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.RecordComponentElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates the codec classes for records annotated with {@link APDUCodec}.
+ */
+public class APDUCodecProcessor extends AbstractProcessor {
+
+	private static final String SUPPORT = "com.satergo.jledger.codec.CodecSupport";
+	private static final String EXPECT = "com.satergo.jledger.Expect";
+
+	private enum Kind {
+		BYTE(1), SHORT(2), INT(4), U8(1), U16(2), LONG(8), BOOLEAN(1),
+		BYTES_FIXED(-1), BYTES_REST(-1), INT_ARRAY(-1), OPTIONAL_INT(-1),
+		RECORD(-1), LIST_RECORD(-1), LIST_BYTES(-1);
+
+		final int size;
+		Kind(int size) { this.size = size; }
+	}
+
+	/**
+	 * @param length the length of fixed byte arrays, of the elements of byte array lists, or the fixed size of records
+	 * @param type the qualified name of the record, or of the element record of a list
+	 */
+	private record Component(String name, Kind kind, int length, String type, boolean countPrefixed) {
+		int fixedSize() {
+			return switch (kind) {
+				case BYTES_FIXED, RECORD -> length;
+				default -> kind.size;
+			};
+		}
+
+		String codec() {
+			return type.substring(type.lastIndexOf('.') + 1) + "Codec";
+		}
+	}
+
+	/** Thrown when a record cannot be processed, the error has already been reported */
+	private static final class InvalidRecordException extends Exception {
+		private static final long serialVersionUID = 1L;
+
+		InvalidRecordException() { super(null, null, false, false); }
+	}
+
+	@Override
+	public Set<String> getSupportedAnnotationTypes() {
+		return Set.of(APDUCodec.class.getName());
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getElementsAnnotatedWith(APDUCodec.class)) {
+			if (element.getKind() != ElementKind.RECORD) {
+				error(element, "@APDUCodec can only be used on records");
+				continue;
+			}
+			TypeElement record = (TypeElement) element;
+			try {
+				generate(record, components(record));
+			} catch (InvalidRecordException ignored) {
+			} catch (IOException e) {
+				error(record, "Could not write codec: " + e.getMessage());
+			}
+		}
+		return true;
+	}
+
+	private List<Component> components(TypeElement record) throws InvalidRecordException {
+		ArrayList<Component> components = new ArrayList<>();
+		List<? extends RecordComponentElement> elements = record.getRecordComponents();
+		for (int i = 0; i < elements.size(); i++) {
+			RecordComponentElement element = elements.get(i);
+			Component component = component(record, element);
+			boolean mustBeLast = switch (component.kind) {
+				case BYTES_REST, OPTIONAL_INT -> true;
+				case LIST_RECORD, LIST_BYTES -> !component.countPrefixed;
+				default -> false;
+			};
+			if (mustBeLast && i != elements.size() - 1)
+				throw invalid(element, "A component of variable length without a prefix must be the last component");
+			components.add(component);
+		}
+		return components;
+	}
+
+	private Component component(TypeElement record, RecordComponentElement element) throws InvalidRecordException {
+		String name = element.getSimpleName().toString();
+		TypeMirror type = element.asType();
+		Length length = element.getAnnotation(Length.class);
+		boolean countPrefixed = element.getAnnotation(CountPrefixed.class) != null;
+		boolean u8 = element.getAnnotation(U8.class) != null, u16 = element.getAnnotation(U16.class) != null;
+		if ((u8 || u16) && type.getKind() != TypeKind.INT)
+			throw invalid(element, "@U8 and @U16 can only be used on int components");
+		switch (type.getKind()) {
+			case BYTE: return new Component(name, Kind.BYTE, 0, "", false);
+			case SHORT: return new Component(name, Kind.SHORT, 0, "", false);
+			case INT: return new Component(name, u8 ? Kind.U8 : u16 ? Kind.U16 : Kind.INT, 0, "", false);
+			case LONG: return new Component(name, Kind.LONG, 0, "", false);
+			case BOOLEAN: return new Component(name, Kind.BOOLEAN, 0, "", false);
+			case ARRAY: {
+				TypeKind elementKind = ((ArrayType) type).getComponentType().getKind();
+				if (elementKind == TypeKind.BYTE) {
+					return length != null
+							? new Component(name, Kind.BYTES_FIXED, length.value(), "", false)
+							: new Component(name, Kind.BYTES_REST, 0, "", false);
+				}
+				if (elementKind == TypeKind.INT)
+					return new Component(name, Kind.INT_ARRAY, 0, "", false);
+				break;
+			}
+			case DECLARED: {
+				TypeElement typeElement = (TypeElement) ((DeclaredType) type).asElement();
+				String qualifiedName = typeElement.getQualifiedName().toString();
+				if (qualifiedName.equals("java.lang.Integer"))
+					return new Component(name, Kind.OPTIONAL_INT, 0, "", false);
+				if (qualifiedName.equals("java.util.List")) {
+					List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+					if (arguments.size() != 1) break;
+					TypeMirror argument = arguments.get(0);
+					if (argument.getKind() == TypeKind.ARRAY && ((ArrayType) argument).getComponentType().getKind() == TypeKind.BYTE) {
+						if (length == null)
+							throw invalid(element, "A List<byte[]> component needs @Length");
+						return new Component(name, Kind.LIST_BYTES, length.value(), "", countPrefixed);
+					}
+					if (argument.getKind() == TypeKind.DECLARED) {
+						TypeElement elementRecord = (TypeElement) ((DeclaredType) argument).asElement();
+						return new Component(name, Kind.LIST_RECORD, nestedSize(record, element, elementRecord),
+								elementRecord.getQualifiedName().toString(), countPrefixed);
+					}
+					break;
+				}
+				return new Component(name, Kind.RECORD, nestedSize(record, element, typeElement), qualifiedName, false);
+			}
+			default:
+				break;
+		}
+		throw invalid(element, "Unsupported component type " + type);
+	}
+
+	/**
+	 * Nested types must be in the same package and have a fixed size. They are either codec records,
+	 * or types with a hand-written codec that has a {@code FIXED_SIZE} constant.
+	 */
+	private int nestedSize(TypeElement record, Element element, TypeElement nested) throws InvalidRecordException {
+		if (!packageOf(nested).equals(packageOf(record)))
+			throw invalid(element, nested.getQualifiedName() + " must be in the same package");
+		if (nested.getKind() != ElementKind.RECORD || nested.getAnnotation(APDUCodec.class) == null) {
+			String codecName = packageOf(nested) + "." + nested.getSimpleName() + "Codec";
+			TypeElement codec = processingEnv.getElementUtils().getTypeElement(codecName);
+			if (codec != null) {
+				for (VariableElement field : ElementFilter.fieldsIn(codec.getEnclosedElements())) {
+					if (field.getSimpleName().contentEquals("FIXED_SIZE") && field.getConstantValue() instanceof Integer size)
+						return size;
+				}
+			}
+			throw invalid(element, nested.getQualifiedName() + " must be a record annotated with @APDUCodec, or have a hand-written " + codecName + " with a FIXED_SIZE constant");
+		}
+		int size = 0;
+		for (Component component : components(nested)) {
+			int componentSize = component.fixedSize();
+			if (componentSize == -1)
+				throw invalid(element, nested.getQualifiedName() + " must have a fixed size");
+			size += componentSize;
+		}
+		return size;
+	}
+
+	private String packageOf(TypeElement type) {
+		Element element = type;
+		while (!(element instanceof PackageElement))
+			element = element.getEnclosingElement();
+		return ((PackageElement) element).getQualifiedName().toString();
+	}
+
+	private void generate(TypeElement record, List<Component> components) throws IOException {
+		String packageName = packageOf(record);
+		String recordName = record.getQualifiedName().toString();
+		String codecName = record.getSimpleName() + "Codec";
+		int fixedSize = 0;
+		boolean fixed = true;
+		for (Component component : components) {
+			if (component.fixedSize() == -1) fixed = false;
+			else fixedSize += component.fixedSize();
+		}
+
+		StringBuilder s = new StringBuilder();
+		if (!packageName.isEmpty())
+			s.append("package ").append(packageName).append(";\n\n");
+		s.append("/** Generated by ").append(getClass().getSimpleName()).append(" from {@link ").append(recordName).append("}, do not edit */\n");
+		s.append("final class ").append(codecName).append(" {\n");
+		s.append("\tprivate ").append(codecName).append("() {}\n\n");
+		if (fixed)
+			s.append("\tstatic final int FIXED_SIZE = ").append(fixedSize).append(";\n\n");
+
+		// size
+		s.append("\tstatic int size(").append(recordName).append(" value) {\n");
+		s.append("\t\tint size = ").append(fixedSize).append(";\n");
+		for (Component c : components) {
+			String v = "value." + c.name + "()";
+			switch (c.kind) {
+				case BYTES_REST -> s.append("\t\tsize += ").append(v).append(".length;\n");
+				case INT_ARRAY -> s.append("\t\tsize += 1 + ").append(v).append(".length * 4;\n");
+				case OPTIONAL_INT -> s.append("\t\tif (").append(v).append(" != null) size += 4;\n");
+				case LIST_RECORD, LIST_BYTES -> {
+					String elementSize = c.kind == Kind.LIST_RECORD ? c.codec() + ".FIXED_SIZE" : String.valueOf(c.length);
+					s.append("\t\tsize += ").append(c.countPrefixed ? "1 + " : "").append(v).append(".size() * ").append(elementSize).append(";\n");
+				}
+				default -> {}
+			}
+		}
+		s.append("\t\treturn size;\n\t}\n\n");
+
+		// encode
+		s.append("\tstatic byte[] encode(").append(recordName).append(" value) {\n");
+		s.append("\t\tbyte[] out = new byte[size(value)];\n");
+		s.append("\t\twrite(value, out, 0);\n");
+		s.append("\t\treturn out;\n\t}\n\n");
+
+		// write
+		s.append("\t/** @return the offset after the written value */\n");
+		s.append("\tstatic int write(").append(recordName).append(" value, byte[] out, int p) {\n");
+		for (Component c : components) {
+			String v = "value." + c.name + "()";
+			switch (c.kind) {
+				case BYTE -> s.append("\t\tout[p++] = ").append(v).append(";\n");
+				case BOOLEAN -> s.append("\t\tout[p++] = (byte) (").append(v).append(" ? 1 : 0);\n");
+				case U8 -> s.append("\t\t").append(EXPECT).append(".ubyte(").append(v).append(");\n")
+						.append("\t\tout[p++] = (byte) ").append(v).append(";\n");
+				case SHORT -> s.append("\t\t").append(SUPPORT).append(".putShort(out, p, ").append(v).append(");\n\t\tp += 2;\n");
+				case U16 -> s.append("\t\t").append(EXPECT).append(".ushort(").append(v).append(");\n")
+						.append("\t\t").append(SUPPORT).append(".putShort(out, p, (short) ").append(v).append(");\n\t\tp += 2;\n");
+				case INT -> s.append("\t\t").append(SUPPORT).append(".putInt(out, p, ").append(v).append(");\n\t\tp += 4;\n");
+				case LONG -> s.append("\t\t").append(SUPPORT).append(".putLong(out, p, ").append(v).append(");\n\t\tp += 8;\n");
+				case BYTES_FIXED -> s.append("\t\t").append(EXPECT).append(".length(").append(v).append(", ").append(c.length).append(");\n")
+						.append("\t\tSystem.arraycopy(").append(v).append(", 0, out, p, ").append(c.length).append(");\n")
+						.append("\t\tp += ").append(c.length).append(";\n");
+				case BYTES_REST -> s.append("\t\tSystem.arraycopy(").append(v).append(", 0, out, p, ").append(v).append(".length);\n")
+						.append("\t\tp += ").append(v).append(".length;\n");
+				case INT_ARRAY -> s.append("\t\tout[p++] = (byte) ").append(SUPPORT).append(".countByte(").append(v).append(".length);\n")
+						.append("\t\tfor (int element : ").append(v).append(") {\n")
+						.append("\t\t\t").append(SUPPORT).append(".putInt(out, p, element);\n\t\t\tp += 4;\n\t\t}\n");
+				case OPTIONAL_INT -> s.append("\t\tif (").append(v).append(" != null) {\n")
+						.append("\t\t\t").append(SUPPORT).append(".putInt(out, p, ").append(v).append(");\n\t\t\tp += 4;\n\t\t}\n");
+				case RECORD -> s.append("\t\tp = ").append(c.codec()).append(".write(").append(v).append(", out, p);\n");
+				case LIST_RECORD, LIST_BYTES -> {
+					if (c.countPrefixed)
+						s.append("\t\tout[p++] = (byte) ").append(SUPPORT).append(".countByte(").append(v).append(".size());\n");
+					if (c.kind == Kind.LIST_RECORD) {
+						s.append("\t\tfor (").append(c.type).append(" element : ").append(v).append(")\n")
+								.append("\t\t\tp = ").append(c.codec()).append(".write(element, out, p);\n");
+					} else {
+						s.append("\t\tfor (byte[] element : ").append(v).append(") {\n")
+								.append("\t\t\t").append(EXPECT).append(".length(element, ").append(c.length).append(");\n")
+								.append("\t\t\tSystem.arraycopy(element, 0, out, p, ").append(c.length).append(");\n")
+								.append("\t\t\tp += ").append(c.length).append(";\n\t\t}\n");
+					}
+				}
+			}
+		}
+		s.append("\t\treturn p;\n\t}\n\n");
+
+		// decode
+		s.append("\tstatic ").append(recordName).append(" decode(byte[] in) {\n");
+		s.append("\t\treturn decode(in, 0, in.length);\n\t}\n\n");
+		s.append("\t/** @throws IllegalArgumentException if the data is too short or too long */\n");
+		s.append("\tstatic ").append(recordName).append(" decode(byte[] in, int offset, int length) {\n");
+		s.append("\t\tint p = offset, end = offset + length;\n");
+		ArrayList<String> arguments = new ArrayList<>();
+		for (int i = 0; i < components.size(); i++) {
+			Component c = components.get(i);
+			String f = "_" + c.name;
+			arguments.add(f);
+			// One bounds check for every run of fixed size components
+			if (c.fixedSize() != -1 && (i == 0 || components.get(i - 1).fixedSize() == -1)) {
+				int runSize = 0;
+				for (int j = i; j < components.size() && components.get(j).fixedSize() != -1; j++)
+					runSize += components.get(j).fixedSize();
+				s.append("\t\t").append(SUPPORT).append(".require(p, end, ").append(runSize).append(");\n");
+			}
+			switch (c.kind) {
+				case BYTE -> s.append("\t\tbyte ").append(f).append(" = in[p++];\n");
+				case BOOLEAN -> s.append("\t\tboolean ").append(f).append(" = in[p++] == 1;\n");
+				case U8 -> s.append("\t\tint ").append(f).append(" = in[p++] & 0xFF;\n");
+				case SHORT -> s.append("\t\tshort ").append(f).append(" = ").append(SUPPORT).append(".getShort(in, p);\n\t\tp += 2;\n");
+				case U16 -> s.append("\t\tint ").append(f).append(" = ").append(SUPPORT).append(".getShort(in, p) & 0xFFFF;\n\t\tp += 2;\n");
+				case INT -> s.append("\t\tint ").append(f).append(" = ").append(SUPPORT).append(".getInt(in, p);\n\t\tp += 4;\n");
+				case LONG -> s.append("\t\tlong ").append(f).append(" = ").append(SUPPORT).append(".getLong(in, p);\n\t\tp += 8;\n");
+				case BYTES_FIXED -> s.append("\t\tbyte[] ").append(f).append(" = java.util.Arrays.copyOfRange(in, p, p + ").append(c.length).append(");\n")
+						.append("\t\tp += ").append(c.length).append(";\n");
+				case BYTES_REST -> s.append("\t\tbyte[] ").append(f).append(" = java.util.Arrays.copyOfRange(in, p, end);\n")
+						.append("\t\tp = end;\n");
+				case INT_ARRAY -> s.append("\t\t").append(SUPPORT).append(".require(p, end, 1);\n")
+						.append("\t\tint[] ").append(f).append(" = new int[in[p++] & 0xFF];\n")
+						.append("\t\t").append(SUPPORT).append(".require(p, end, ").append(f).append(".length * 4);\n")
+						.append("\t\tfor (int i = 0; i < ").append(f).append(".length; i++) {\n")
+						.append("\t\t\t").append(f).append("[i] = ").append(SUPPORT).append(".getInt(in, p);\n\t\t\tp += 4;\n\t\t}\n");
+				case OPTIONAL_INT -> s.append("\t\tInteger ").append(f).append(" = null;\n")
+						.append("\t\tif (p < end) {\n")
+						.append("\t\t\t").append(SUPPORT).append(".require(p, end, 4);\n")
+						.append("\t\t\t").append(f).append(" = ").append(SUPPORT).append(".getInt(in, p);\n\t\t\tp += 4;\n\t\t}\n");
+				case RECORD -> s.append("\t\t").append(c.type).append(" ").append(f).append(" = ").append(c.codec())
+						.append(".decode(in, p, ").append(c.length).append(");\n")
+						.append("\t\tp += ").append(c.length).append(";\n");
+				case LIST_RECORD, LIST_BYTES -> {
+					String elementType = c.kind == Kind.LIST_RECORD ? c.type : "byte[]";
+					String count = f + "Count";
+					if (c.countPrefixed) {
+						s.append("\t\t").append(SUPPORT).append(".require(p, end, 1);\n")
+								.append("\t\tint ").append(count).append(" = in[p++] & 0xFF;\n")
+								.append("\t\t").append(SUPPORT).append(".require(p, end, ").append(count).append(" * ").append(c.length).append(");\n");
+					} else {
+						s.append("\t\tif ((end - p) % ").append(c.length).append(" != 0)\n")
+								.append("\t\t\tthrow new IllegalArgumentException(\"Incomplete list element\");\n")
+								.append("\t\tint ").append(count).append(" = (end - p) / ").append(c.length).append(";\n");
+					}
+					s.append("\t\t").append(elementType).append("[] ").append(f).append("Array = new ").append(elementType.replace("[]", ""))
+							.append("[").append(count).append("]").append(elementType.endsWith("[]") ? "[]" : "").append(";\n")
+							.append("\t\tfor (int i = 0; i < ").append(count).append("; i++) {\n");
+					if (c.kind == Kind.LIST_RECORD)
+						s.append("\t\t\t").append(f).append("Array[i] = ").append(c.codec()).append(".decode(in, p, ").append(c.length).append(");\n");
+					else
+						s.append("\t\t\t").append(f).append("Array[i] = java.util.Arrays.copyOfRange(in, p, p + ").append(c.length).append(");\n");
+					s.append("\t\t\tp += ").append(c.length).append(";\n\t\t}\n")
+							.append("\t\tjava.util.List<").append(elementType).append("> ").append(f)
+							.append(" = java.util.Collections.unmodifiableList(java.util.Arrays.asList(").append(f).append("Array));\n");
+				}
+			}
+		}
+		s.append("\t\tif (p != end)\n\t\t\tthrow new IllegalArgumentException(\"Unread data\");\n");
+		s.append("\t\treturn new ").append(recordName).append("(").append(String.join(", ", arguments)).append(");\n\t}\n");
+		s.append("}\n");
+
+		String qualifiedCodecName = packageName.isEmpty() ? codecName : packageName + "." + codecName;
+		try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedCodecName, record).openWriter()) {
+			writer.write(s.toString());
+		}
+	}
+
+	private InvalidRecordException invalid(Element element, String message) {
+		error(element, message);
+		return new InvalidRecordException();
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+}
@@ -0,0 +1,10 @@
+import org.jspecify.annotations.NullMarked;
+
+@NullMarked
+module com.satergo.jledger.codec.processor {
+
+	requires static org.jspecify;
+	requires java.compiler;
+	requires com.satergo.jledger.core;
+	provides javax.annotation.processing.Processor with com.satergo.jledger.codec.processor.APDUCodecProcessor;
+}
\ No newline at end of file
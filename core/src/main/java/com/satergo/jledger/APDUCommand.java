@@ -68,4 +68,15 @@ public final class APDUCommand {
 		Objects.checkIndex(index, apdu.length - 5);
 		return apdu[5 + index];
 	}
+
+	/** Two commands are equal if their CLA, INS, P1, P2 and data are all equal */
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof APDUCommand c && Arrays.equals(apdu, c.apdu);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(apdu);
+	}
 }
@@ -6,4 +6,11 @@ public abstract class AppProtocol {
 	public AppProtocol(LedgerDevice device) {
 		this.device = device;
 	}
+
+	/**
+	 * @see LedgerDevice#lease(DeviceScheduler.Priority)
+	 */
+	public DeviceScheduler.Lease lease(DeviceScheduler.Priority priority) {
+		return device.lease(priority);
+	}
 }
@@ -0,0 +1,24 @@
+package com.satergo.jledger;
+
+/**
+ * Recognizes the commands and responses that mean the app open on the device changed, so that state belonging
+ * to the previous app can be discarded.
+ */
+public final class AppSwitch {
+	private AppSwitch() {}
+
+	/** Sent by the dashboard or another app when the command class is not the one of the app that is expected to be open */
+	private static final int SW_CLA_NOT_SUPPORTED = 0x6E00;
+	/** Sent by the dashboard when no app is open */
+	private static final int SW_APP_NOT_OPEN = 0x6D02;
+
+	/** Dashboard commands for opening (E0 D8) and quitting (B0 A7) an app */
+	public static boolean isAppSwitch(APDUCommand apdu) {
+		return (apdu.getCLA() == 0xE0 && apdu.getINS() == 0xD8) || (apdu.getCLA() == 0xB0 && apdu.getINS() == 0xA7);
+	}
+
+	/** Whether the response came from the dashboard or a different app than the expected one */
+	public static boolean isFromOtherApp(APDUResponse response) {
+		return response.getSW() == SW_CLA_NOT_SUPPORTED || response.getSW() == SW_APP_NOT_OPEN;
+	}
+}
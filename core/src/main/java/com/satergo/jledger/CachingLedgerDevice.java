@@ -0,0 +1,118 @@
+package com.satergo.jledger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * A {@link LedgerDevice} decorator that remembers the responses of commands which the app protocol declares idempotent,
+ * for example {@code new CachingLedgerDevice(device, ErgoProtocol::isIdempotent)}.
+ * <p>
+ * Commands are matched by their CLA, INS, P1, P2 and data. Concurrent exchanges of the same command share one
+ * exchange with the underlying device, except that a thread holding a lease never waits for another thread.
+ * Only successful ({@code 0x9000}) responses are kept.
+ * <p>
+ * The cache is cleared when the device is opened or closed, when a command that switches apps is sent,
+ * and when a response indicates that a different app is running (see {@link AppSwitch}).
+ * It can also be cleared manually with {@link #invalidate()}.
+ */
+public class CachingLedgerDevice implements LedgerDevice {
+
+	private static final int SW_OK = 0x9000;
+
+	private final LedgerDevice device;
+	private final Predicate<APDUCommand> idempotent;
+	private final ConcurrentHashMap<APDUCommand, CompletableFuture<APDUResponse>> cache = new ConcurrentHashMap<>();
+
+	/**
+	 * @param idempotent returns true for commands whose response may be reused for identical commands
+	 */
+	public CachingLedgerDevice(LedgerDevice device, Predicate<APDUCommand> idempotent) {
+		this.device = device;
+		this.idempotent = idempotent;
+	}
+
+	public LedgerDevice getDevice() {
+		return device;
+	}
+
+	/** Removes all remembered responses. Exchanges that are in progress will not be remembered. */
+	public void invalidate() {
+		cache.clear();
+	}
+
+	@Override public int getProductId() { return device.getProductId(); }
+	@Override public DeviceScheduler getScheduler() { return device.getScheduler(); }
+
+	@Override
+	public void open() {
+		invalidate();
+		device.open();
+	}
+
+	@Override
+	public void close() {
+		invalidate();
+		device.close();
+	}
+
+	@Override
+	public void writeAPDU(APDUCommand apdu) {
+		if (AppSwitch.isAppSwitch(apdu))
+			invalidate();
+		device.writeAPDU(apdu);
+	}
+
+	@Override
+	public APDUResponse readAPDU() {
+		return checkAppSwitch(device.readAPDU());
+	}
+
+	@Override
+	public APDUResponse exchange(APDUCommand apdu) {
+		if (!idempotent.test(apdu)) {
+			if (AppSwitch.isAppSwitch(apdu))
+				invalidate();
+			return checkAppSwitch(device.exchange(apdu));
+		}
+		CompletableFuture<APDUResponse> future = new CompletableFuture<>();
+		CompletableFuture<APDUResponse> existing = cache.putIfAbsent(apdu, future);
+		if (existing != null) {
+			// The caller that is exchanging the command may be waiting for the lease of this thread,
+			// so a thread holding the lease exchanges the command itself instead of waiting for it
+			if (!existing.isDone() && device.getScheduler().isHeldByCurrentThread())
+				return checkAppSwitch(device.exchange(apdu));
+			return await(existing);
+		}
+		APDUResponse response;
+		try {
+			response = checkAppSwitch(device.exchange(apdu));
+		} catch (Throwable t) {
+			cache.remove(apdu, future);
+			future.completeExceptionally(t);
+			throw t;
+		}
+		// Waiting callers still receive an unsuccessful response, but it is not kept for later callers
+		if (response.getSW() != SW_OK)
+			cache.remove(apdu, future);
+		future.complete(response);
+		return response;
+	}
+
+	private static APDUResponse await(CompletableFuture<APDUResponse> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException r) throw r;
+			if (e.getCause() instanceof Error err) throw err;
+			throw e;
+		}
+	}
+
+	private APDUResponse checkAppSwitch(APDUResponse response) {
+		if (AppSwitch.isFromOtherApp(response))
+			invalidate();
+		return response;
+	}
+}
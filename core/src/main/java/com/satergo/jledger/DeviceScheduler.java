@@ -0,0 +1,215 @@
+package com.satergo.jledger;
+
+import org.jspecify.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides which thread may use a device. A thread holding a {@link Lease} has exclusive access to the device until
+ * the lease is closed, so that multi-command sessions are not interleaved with commands from other threads.
+ * <p>
+ * Waiting threads are served in order within each {@link Priority}. {@link Priority#INTERACTIVE INTERACTIVE} leases are
+ * preferred, but a waiting {@link Priority#BATCH BATCH} lease is granted after at most {@code maxInteractiveStreak}
+ * interactive leases, so no waiting thread can be starved.
+ * <p>
+ * Leases are reentrant and belong to the thread that acquired them.
+ */
+public final class DeviceScheduler {
+
+	public enum Priority {
+		/** Short operations that a user is waiting for */
+		INTERACTIVE,
+		/** Long or background operations, such as signing many transactions */
+		BATCH
+	}
+
+	public record WaitStatistics(long leases, Duration totalWait, Duration maxWait) {}
+
+	private static final class Waiter {
+		final Thread thread = Thread.currentThread();
+		final Condition condition;
+		boolean granted;
+
+		Waiter(Condition condition) {
+			this.condition = condition;
+		}
+	}
+
+	private final int maxInteractiveStreak;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final EnumMap<Priority, ArrayDeque<Waiter>> queues = new EnumMap<>(Priority.class);
+	private @Nullable Thread owner;
+	private int holds;
+	private int interactiveStreak;
+
+	private final EnumMap<Priority, long[]> statistics = new EnumMap<>(Priority.class);
+
+	public DeviceScheduler() {
+		this(4);
+	}
+
+	/**
+	 * @param maxInteractiveStreak how many interactive leases may be granted in a row while a batch lease is waiting
+	 */
+	public DeviceScheduler(int maxInteractiveStreak) {
+		if (maxInteractiveStreak < 1) throw new IllegalArgumentException("maxInteractiveStreak must be at least 1");
+		this.maxInteractiveStreak = maxInteractiveStreak;
+		for (Priority priority : Priority.values()) {
+			queues.put(priority, new ArrayDeque<>());
+			// leases, total wait nanos, max wait nanos
+			statistics.put(priority, new long[3]);
+		}
+	}
+
+	/**
+	 * Waits until the current thread has exclusive access to the device.
+	 */
+	public Lease acquire(Priority priority) {
+		Lease lease = acquire(priority, -1);
+		assert lease != null;
+		return lease;
+	}
+
+	/**
+	 * Waits until the current thread has exclusive access to the device, or until the timeout has passed.
+	 * @return the lease, or null if the timeout passed
+	 */
+	public @Nullable Lease tryAcquire(Priority priority, Duration timeout) {
+		return acquire(priority, Math.max(0, timeout.toNanos()));
+	}
+
+	private @Nullable Lease acquire(Priority priority, long timeoutNanos) {
+		long start = System.nanoTime();
+		lock.lock();
+		try {
+			Thread current = Thread.currentThread();
+			if (owner == current) {
+				holds++;
+				return new Lease();
+			}
+			if (owner == null && queues.values().stream().allMatch(ArrayDeque::isEmpty)) {
+				grant(current, priority);
+				record(priority, 0);
+				return new Lease();
+			}
+			Waiter waiter = new Waiter(lock.newCondition());
+			queues.get(priority).add(waiter);
+			long remaining = timeoutNanos;
+			while (!waiter.granted) {
+				if (timeoutNanos == -1) {
+					waiter.condition.awaitUninterruptibly();
+				} else {
+					if (remaining <= 0) {
+						queues.get(priority).remove(waiter);
+						return null;
+					}
+					try {
+						remaining = waiter.condition.awaitNanos(remaining);
+					} catch (InterruptedException e) {
+						if (!waiter.granted) queues.get(priority).remove(waiter);
+						else release();
+						Thread.currentThread().interrupt();
+						return null;
+					}
+				}
+			}
+			record(priority, System.nanoTime() - start);
+			return new Lease();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void grant(Thread thread, Priority priority) {
+		owner = thread;
+		holds = 1;
+		interactiveStreak = priority == Priority.INTERACTIVE ? interactiveStreak + 1 : 0;
+	}
+
+	private void record(Priority priority, long waitNanos) {
+		long[] s = statistics.get(priority);
+		s[0]++;
+		s[1] += waitNanos;
+		s[2] = Math.max(s[2], waitNanos);
+	}
+
+	private void release() {
+		if (owner != Thread.currentThread())
+			throw new IllegalMonitorStateException("The lease is not held by the current thread");
+		if (--holds > 0)
+			return;
+		owner = null;
+		ArrayDeque<Waiter> interactive = queues.get(Priority.INTERACTIVE), batch = queues.get(Priority.BATCH);
+		Priority next;
+		if (!batch.isEmpty() && (interactive.isEmpty() || interactiveStreak >= maxInteractiveStreak))
+			next = Priority.BATCH;
+		else if (!interactive.isEmpty())
+			next = Priority.INTERACTIVE;
+		else {
+			interactiveStreak = 0;
+			return;
+		}
+		Waiter waiter = queues.get(next).poll();
+		assert waiter != null;
+		grant(waiter.thread, next);
+		waiter.granted = true;
+		waiter.condition.signal();
+	}
+
+	/** Whether the current thread holds a lease */
+	public boolean isHeldByCurrentThread() {
+		lock.lock();
+		try {
+			return owner == Thread.currentThread();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** The amount of threads waiting for a lease of the priority */
+	public int getQueueLength(Priority priority) {
+		lock.lock();
+		try {
+			return queues.get(priority).size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/** How long leases of the priority have waited to be granted. Reentrant acquisitions are not counted. */
+	public WaitStatistics getStatistics(Priority priority) {
+		lock.lock();
+		try {
+			long[] s = statistics.get(priority);
+			return new WaitStatistics(s[0], Duration.ofNanos(s[1]), Duration.ofNanos(s[2]));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Exclusive access to a device, ends when closed.
+	 */
+	public final class Lease implements AutoCloseable {
+		private boolean closed;
+
+		private Lease() {}
+
+		@Override
+		public void close() {
+			lock.lock();
+			try {
+				if (closed) return;
+				release();
+				closed = true;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+}
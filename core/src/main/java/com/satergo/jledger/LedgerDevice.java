@@ -31,7 +31,22 @@ public interface LedgerDevice {
 
 	/**
 	 * Sends a command to the device and reads a response from it.
-	 * @implSpec The method must not exchange any other commands while the response for a previous one has not been received
+	 * @implSpec The method must not exchange any other commands while the response for a previous one has not been received,
+	 * 	and it must wait while another thread holds a lease from {@link #getScheduler()}
 	 */
 	APDUResponse exchange(APDUCommand apdu);
+
+	/**
+	 * The scheduler that decides which thread may exchange commands with the device.
+	 * @implSpec The same instance must be returned every time, and {@link #exchange(APDUCommand)} must use it
+	 */
+	DeviceScheduler getScheduler();
+
+	/**
+	 * Waits until the current thread has exclusive access to the device, which lasts until the lease is closed.
+	 * This should be used around commands that belong to the same session so that no other thread can interleave with them.
+	 */
+	default DeviceScheduler.Lease lease(DeviceScheduler.Priority priority) {
+		return getScheduler().acquire(priority);
+	}
 }
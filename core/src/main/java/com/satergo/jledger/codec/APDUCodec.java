@@ -0,0 +1,29 @@
+package com.satergo.jledger.codec;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a codec class named {@code <RecordName>Codec} in the same package as the annotated record,
+ * using the codec-processor annotation processor. The codec has static methods to calculate the exact size of a value,
+ * to encode it into a new array or an existing one, and to decode it.
+ * <p>
+ * The components are written in order, big-endian, without any padding:
+ * <ul>
+ *     <li>{@code byte}, {@code short}, {@code int}, {@code long}: 1, 2, 4 and 8 bytes, see also {@link U8} and {@link U16}</li>
+ *     <li>{@code boolean}: 1 byte, 0x01 for true</li>
+ *     <li>{@code byte[]}: exactly {@link Length} bytes, or all remaining bytes if it is the last component</li>
+ *     <li>{@code int[]}: a byte with the element count followed by the elements, like a BIP44 path</li>
+ *     <li>{@code Integer}: an optional int that is only present when not null, must be the last component</li>
+ *     <li>A record with this annotation and a fixed size: its components, inline. Instead of a record, the type can
+ *     also have a hand-written codec of the same shape with a {@code FIXED_SIZE} constant.</li>
+ *     <li>{@code List} of such records, or of {@code byte[]} with a {@link Length}: the elements one after another,
+ *     preceded by a count byte when annotated with {@link CountPrefixed}, otherwise it must be the last component</li>
+ * </ul>
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface APDUCodec {
+}
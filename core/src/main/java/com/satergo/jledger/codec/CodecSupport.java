@@ -0,0 +1,41 @@
+package com.satergo.jledger.codec;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Used by the codecs generated for {@link APDUCodec} records.
+ */
+public final class CodecSupport {
+	private CodecSupport() {}
+
+	private static final VarHandle SHORT = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+	public static void putShort(byte[] array, int offset, short value) { SHORT.set(array, offset, value); }
+	public static void putInt(byte[] array, int offset, int value) { INT.set(array, offset, value); }
+	public static void putLong(byte[] array, int offset, long value) { LONG.set(array, offset, value); }
+
+	public static short getShort(byte[] array, int offset) { return (short) SHORT.get(array, offset); }
+	public static int getInt(byte[] array, int offset) { return (int) INT.get(array, offset); }
+	public static long getLong(byte[] array, int offset) { return (long) LONG.get(array, offset); }
+
+	/**
+	 * @throws IllegalArgumentException if there are less than {@code needed} bytes from {@code offset} to {@code end}
+	 */
+	public static void require(int offset, int end, int needed) {
+		if (end - offset < needed)
+			throw new IllegalArgumentException("Not enough data");
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the list has more elements than fit in a count byte
+	 */
+	public static int countByte(int count) {
+		if (count > 255)
+			throw new IllegalArgumentException("max 255 elements");
+		return count;
+	}
+}
@@ -0,0 +1,12 @@
+package com.satergo.jledger.codec;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** A {@code List} component that is preceded by one byte containing the amount of elements */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.RECORD_COMPONENT)
+public @interface CountPrefixed {
+}
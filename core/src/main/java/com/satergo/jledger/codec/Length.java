@@ -0,0 +1,13 @@
+package com.satergo.jledger.codec;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** The exact length of a {@code byte[]} component, or of every element of a {@code List<byte[]>} component */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.RECORD_COMPONENT)
+public @interface Length {
+	int value();
+}
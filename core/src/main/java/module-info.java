@@ -5,4 +5,5 @@ module com.satergo.jledger.core {
 
 	requires static org.jspecify;
 	exports com.satergo.jledger;
+	exports com.satergo.jledger.codec;
 }
\ No newline at end of file
@@ -0,0 +1,165 @@
+package com.satergo.jledger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingLedgerDeviceTest {
+
+	private static final APDUCommand IDEMPOTENT = new APDUCommand(0xE0, 0x01, 0, 0);
+
+	/** Answers every command with its INS and the number of the exchange */
+	private static final class CountingDevice implements LedgerDevice {
+		final DeviceScheduler scheduler = new DeviceScheduler();
+		final AtomicInteger exchanges = new AtomicInteger();
+		volatile int sw = 0x9000;
+		/** When set, exchanges count down {@code entered} and wait for {@code proceed} */
+		volatile CountDownLatch entered, proceed;
+
+		@Override public int getProductId() { return 0x1011; }
+		@Override public void open() {}
+		@Override public void close() {}
+		@Override public void writeAPDU(APDUCommand apdu) { throw new UnsupportedOperationException(); }
+		@Override public APDUResponse readAPDU() { throw new UnsupportedOperationException(); }
+		@Override public DeviceScheduler getScheduler() { return scheduler; }
+
+		@Override
+		public APDUResponse exchange(APDUCommand apdu) {
+			try (DeviceScheduler.Lease lease = scheduler.acquire(DeviceScheduler.Priority.INTERACTIVE)) {
+				int exchange = exchanges.incrementAndGet();
+				if (proceed != null) {
+					entered.countDown();
+					try {
+						proceed.await();
+					} catch (InterruptedException e) {
+						throw new RuntimeException(e);
+					}
+				}
+				return new APDUResponse(new byte[] { (byte) apdu.getINS(), (byte) exchange, (byte) (sw >> 8), (byte) sw });
+			}
+		}
+	}
+
+	private static CachingLedgerDevice caching(LedgerDevice device) {
+		return new CachingLedgerDevice(device, apdu -> apdu.getINS() == 0x01);
+	}
+
+	@Test
+	void reusesSuccessfulResponses() {
+		CountingDevice device = new CountingDevice();
+		CachingLedgerDevice caching = caching(device);
+		APDUResponse first = caching.exchange(IDEMPOTENT);
+		assertSame(first, caching.exchange(IDEMPOTENT));
+		assertEquals(1, device.exchanges.get());
+	}
+
+	@Test
+	void doesNotReuseOtherCommands() {
+		CountingDevice device = new CountingDevice();
+		CachingLedgerDevice caching = caching(device);
+		caching.exchange(new APDUCommand(0xE0, 0x02, 0, 0));
+		caching.exchange(new APDUCommand(0xE0, 0x02, 0, 0));
+		// Same INS but different data
+		caching.exchange(new APDUCommand(0xE0, 0x01, 0, 0, new byte[] { 1 }));
+		caching.exchange(new APDUCommand(0xE0, 0x01, 0, 0, new byte[] { 2 }));
+		assertEquals(4, device.exchanges.get());
+	}
+
+	@Test
+	void doesNotKeepErrors() {
+		CountingDevice device = new CountingDevice();
+		device.sw = 0x6985;
+		CachingLedgerDevice caching = caching(device);
+		assertEquals(0x6985, caching.exchange(IDEMPOTENT).getSW());
+		caching.exchange(IDEMPOTENT);
+		assertEquals(2, device.exchanges.get());
+	}
+
+	@Test
+	@Timeout(10)
+	void concurrentExchangesShareOne() throws Exception {
+		CountingDevice device = new CountingDevice();
+		device.entered = new CountDownLatch(1);
+		device.proceed = new CountDownLatch(1);
+		CachingLedgerDevice caching = caching(device);
+		CompletableFuture<APDUResponse> first = CompletableFuture.supplyAsync(() -> caching.exchange(IDEMPOTENT));
+		device.entered.await();
+		CompletableFuture<APDUResponse> second = new CompletableFuture<>();
+		Thread thread = new Thread(() -> second.complete(caching.exchange(IDEMPOTENT)));
+		thread.start();
+		while (thread.getState() != Thread.State.WAITING)
+			Thread.onSpinWait();
+		device.proceed.countDown();
+		assertSame(first.get(), second.get());
+		assertEquals(1, device.exchanges.get());
+	}
+
+	@Test
+	void appSwitchCommandClearsCache() {
+		CountingDevice device = new CountingDevice();
+		CachingLedgerDevice caching = caching(device);
+		caching.exchange(IDEMPOTENT);
+		caching.exchange(new APDUCommand(0xE0, 0xD8, 0, 0));
+		caching.exchange(IDEMPOTENT);
+		assertEquals(3, device.exchanges.get());
+	}
+
+	@Test
+	void otherAppStatusClearsCache() {
+		for (int sw : new int[] { 0x6E00, 0x6D02 }) {
+			CountingDevice device = new CountingDevice();
+			CachingLedgerDevice caching = caching(device);
+			caching.exchange(IDEMPOTENT);
+			device.sw = sw;
+			caching.exchange(new APDUCommand(0xE0, 0x02, 0, 0));
+			device.sw = 0x9000;
+			caching.exchange(IDEMPOTENT);
+			assertEquals(3, device.exchanges.get(), Integer.toHexString(sw));
+		}
+	}
+
+	@Test
+	void openAndCloseClearCache() {
+		CountingDevice device = new CountingDevice();
+		CachingLedgerDevice caching = caching(device);
+		caching.exchange(IDEMPOTENT);
+		caching.close();
+		caching.exchange(IDEMPOTENT);
+		caching.open();
+		caching.exchange(IDEMPOTENT);
+		assertEquals(3, device.exchanges.get());
+	}
+
+	/**
+	 * Another thread starts exchanging a command and waits for the lease of this thread,
+	 * then this thread exchanges the same command while still holding the lease.
+	 */
+	@Test
+	@Timeout(10)
+	void leaseHolderDoesNotWaitForBlockedExchange() throws Exception {
+		CountingDevice device = new CountingDevice();
+		CachingLedgerDevice caching = caching(device);
+		CompletableFuture<APDUResponse> other = new CompletableFuture<>();
+		try (DeviceScheduler.Lease lease = caching.lease(DeviceScheduler.Priority.BATCH)) {
+			Thread thread = new Thread(() -> {
+				try {
+					other.complete(caching.exchange(IDEMPOTENT));
+				} catch (Throwable t) {
+					other.completeExceptionally(t);
+				}
+			});
+			thread.start();
+			while (device.scheduler.getQueueLength(DeviceScheduler.Priority.INTERACTIVE) == 0)
+				Thread.onSpinWait();
+			assertEquals(0x9000, caching.exchange(IDEMPOTENT).getSW());
+			assertFalse(other.isDone());
+		}
+		assertEquals(0x9000, other.get().getSW());
+		assertEquals(2, device.exchanges.get());
+	}
+}
@@ -0,0 +1,84 @@
+package com.satergo.jledger.stress;
+
+import com.satergo.jledger.APDUCommand;
+import com.satergo.jledger.DeviceScheduler;
+import com.satergo.jledger.LedgerDevice;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of one device shared by an increasing number of threads. Every response is checked to belong to
+ * its command, so interleaving fails the benchmark.
+ * <p>
+ * Run with {@code ./gradlew :device-stress:jmh}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExchangeContentionBenchmark {
+
+	@Param({ "MEMORY", "HID", "SPECULOS" })
+	public DeviceKind kind;
+
+	private DeviceKind.Fixture fixture;
+	private final AtomicInteger callers = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setup() {
+		fixture = kind.open();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		fixture.close();
+	}
+
+	@State(Scope.Thread)
+	public static class Caller {
+		int id;
+		long call;
+
+		@Setup(Level.Trial)
+		public void setup(ExchangeContentionBenchmark benchmark) {
+			id = benchmark.callers.incrementAndGet();
+		}
+
+		long exchange(LedgerDevice device) {
+			APDUCommand command = Echo.command(id, call++);
+			long sequence = Echo.check(command, device.exchange(command));
+			if (sequence < 0)
+				throw new IllegalStateException("Received the response to another command");
+			return sequence;
+		}
+	}
+
+	@Benchmark @Threads(1)
+	public long threads1(Caller caller) { return caller.exchange(fixture.device()); }
+
+	@Benchmark @Threads(2)
+	public long threads2(Caller caller) { return caller.exchange(fixture.device()); }
+
+	@Benchmark @Threads(4)
+	public long threads4(Caller caller) { return caller.exchange(fixture.device()); }
+
+	@Benchmark @Threads(8)
+	public long threads8(Caller caller) { return caller.exchange(fixture.device()); }
+
+	@Benchmark @Threads(16)
+	public long threads16(Caller caller) { return caller.exchange(fixture.device()); }
+
+	/** Sessions of 3 exchanges under a batch lease, competing with each other */
+	@Benchmark @Threads(8)
+	@OperationsPerInvocation(3)
+	public long leasedSessionThreads8(Caller caller) {
+		LedgerDevice device = fixture.device();
+		try (DeviceScheduler.Lease lease = device.lease(DeviceScheduler.Priority.BATCH)) {
+			return caller.exchange(device) + caller.exchange(device) + caller.exchange(device);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package com.satergo.jledger.stress;
+
+import com.satergo.jledger.LedgerDevice;
+import com.satergo.jledger.transport.hid4java.Hid4javaLedgerDevice;
+import com.satergo.jledger.transport.speculos.SpeculosLedgerDevice;
+import org.jspecify.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+
+/**
+ * The device stacks that are stressed, each backed by a fake that answers with {@link Echo} responses.
+ */
+public enum DeviceKind {
+	/** {@link EchoLedgerDevice} */
+	MEMORY,
+	/** {@link Hid4javaLedgerDevice} over a {@link LoopbackHidDevice} */
+	HID,
+	/** {@link SpeculosLedgerDevice} connected to an {@link EchoSpeculosServer} */
+	SPECULOS;
+
+	/** An open device and whatever it needs, closing it closes both */
+	public record Fixture(LedgerDevice device, @Nullable Closeable backend) implements Closeable {
+		@Override
+		public void close() {
+			device.close();
+			try {
+				if (backend != null) backend.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	public Fixture open() {
+		Fixture fixture = switch (this) {
+			case MEMORY -> new Fixture(new EchoLedgerDevice(0), null);
+			case HID -> new Fixture(new Hid4javaLedgerDevice(new LoopbackHidDevice()), null);
+			case SPECULOS -> {
+				EchoSpeculosServer server = new EchoSpeculosServer();
+				yield new Fixture(new SpeculosLedgerDevice(InetAddress.getLoopbackAddress().getHostAddress(), server.getPort(), 0x1011), server);
+			}
+		};
+		fixture.device().open();
+		return fixture;
+	}
+}
@@ -0,0 +1,47 @@
+package com.satergo.jledger.stress;
+
+import com.satergo.jledger.APDUCommand;
+import com.satergo.jledger.APDUResponse;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * The behavior shared by the fake devices: the response data is the command data followed by the 8-byte number
+ * of the exchange on that device, so a caller can tell whether it received the response to its own command and
+ * whether its exchanges were consecutive.
+ */
+final class Echo {
+	private Echo() {}
+
+	static final int SEQUENCE_LENGTH = 8;
+
+	/**
+	 * @param apdu the raw command
+	 * @return the raw response, data and status word
+	 */
+	static byte[] respond(byte[] apdu, long sequence) {
+		int dataLength = Math.max(0, apdu.length - 5);
+		ByteBuffer response = ByteBuffer.allocate(dataLength + SEQUENCE_LENGTH + 2);
+		response.put(apdu, apdu.length - dataLength, dataLength).putLong(sequence).putShort((short) 0x9000);
+		return response.array();
+	}
+
+	/**
+	 * A command whose data identifies the caller and the call.
+	 */
+	static APDUCommand command(int caller, long call) {
+		return new APDUCommand(0xE0, 0x01, 0x00, 0x00, ByteBuffer.allocate(12).putInt(caller).putLong(call).array());
+	}
+
+	/**
+	 * @return the exchange number, or -1 if the response does not belong to the command
+	 */
+	static long check(APDUCommand command, APDUResponse response) {
+		byte[] sent = command.getData(), data = response.getData();
+		if (response.getSW() != 0x9000 || data.length != sent.length + SEQUENCE_LENGTH
+				|| !Arrays.equals(sent, 0, sent.length, data, 0, sent.length))
+			return -1;
+		return ByteBuffer.wrap(data, sent.length, SEQUENCE_LENGTH).getLong();
+	}
+}
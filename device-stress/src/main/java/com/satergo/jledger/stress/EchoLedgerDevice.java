@@ -0,0 +1,61 @@
+package com.satergo.jledger.stress;
+
+import com.satergo.jledger.APDUCommand;
+import com.satergo.jledger.APDUResponse;
+import com.satergo.jledger.DeviceScheduler;
+import com.satergo.jledger.LedgerDevice;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-memory device that, like a real one, holds only one response. A command written before the previous
+ * response was read replaces it, and reading without a pending response fails.
+ */
+public class EchoLedgerDevice implements LedgerDevice {
+
+	private final long latencyNanos;
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicReference<byte[]> pending = new AtomicReference<>();
+	private final DeviceScheduler scheduler = new DeviceScheduler();
+
+	/**
+	 * @param latencyNanos how long reading a response takes
+	 */
+	public EchoLedgerDevice(long latencyNanos) {
+		this.latencyNanos = latencyNanos;
+	}
+
+	@Override public int getProductId() { return 0x1011; }
+	@Override public void open() {}
+	@Override public void close() {}
+
+	@Override
+	public void writeAPDU(APDUCommand apdu) {
+		pending.set(Echo.respond(apdu.getBytes(), sequence.getAndIncrement()));
+	}
+
+	@Override
+	public APDUResponse readAPDU() {
+		if (latencyNanos > 0)
+			LockSupport.parkNanos(latencyNanos);
+		byte[] response = pending.getAndSet(null);
+		if (response == null)
+			throw new IllegalStateException("No response pending");
+		return new APDUResponse(response);
+	}
+
+	@Override
+	public DeviceScheduler getScheduler() {
+		return scheduler;
+	}
+
+	@Override
+	public APDUResponse exchange(APDUCommand apdu) {
+		try (DeviceScheduler.Lease lease = scheduler.acquire(DeviceScheduler.Priority.INTERACTIVE)) {
+			writeAPDU(apdu);
+			return readAPDU();
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package com.satergo.jledger.stress;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers commands in the Speculos APDU wire format with {@link Echo} responses, counting exchanges over all connections.
+ */
+public class EchoSpeculosServer implements Closeable {
+
+	private final ServerSocket serverSocket;
+	private final AtomicLong sequence = new AtomicLong();
+
+	public EchoSpeculosServer() {
+		try {
+			serverSocket = new ServerSocket();
+			serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		Thread thread = new Thread(this::accept, "jledger-echo-speculos");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	@Override
+	public void close() {
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void accept() {
+		while (true) {
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+			} catch (IOException e) {
+				// closed
+				return;
+			}
+			Thread thread = new Thread(() -> serve(socket), "jledger-echo-speculos-connection");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private void serve(Socket socket) {
+		try (socket) {
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			OutputStream out = socket.getOutputStream();
+			while (true) {
+				byte[] apdu = new byte[in.readInt()];
+				in.readFully(apdu);
+				byte[] response = Echo.respond(apdu, sequence.getAndIncrement());
+				// The length does not include the status word
+				out.write(ByteBuffer.allocate(4 + response.length).putInt(response.length - 2).put(response).array());
+			}
+		} catch (EOFException e) {
+			// disconnected
+		} catch (IOException e) {
+			// closed
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package com.satergo.jledger.stress;
+
+import com.satergo.jledger.APDUCommand;
+import com.satergo.jledger.DeviceScheduler;
+import com.satergo.jledger.LedgerDevice;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stress checks in the style of jcstress: many threads use one device at the same time, every call is classified
+ * as an {@link Outcome}, and the run fails if an outcome that the scenario forbids was observed. The table also
+ * shows the throughput for every thread count.
+ * <p>
+ * Run with {@code ./gradlew :device-stress:run}, optionally with {@code --args="--threads=1,4,16 --duration-ms=2000"}.
+ */
+public final class ExchangeStress {
+	private ExchangeStress() {}
+
+	public enum Outcome {
+		OK,
+		/** The response belonged to another command */
+		INTERLEAVED,
+		/** Another thread exchanged a command in the middle of a leased session */
+		SPLIT_SESSION,
+		/** An exception was thrown */
+		ERROR
+	}
+
+	public enum Scenario {
+		/** Concurrent {@link LedgerDevice#exchange} calls */
+		EXCHANGE(EnumSet.of(Outcome.INTERLEAVED, Outcome.ERROR)),
+		/** Sessions of {@value #SESSION_LENGTH} exchanges, each under a lease of alternating priority */
+		LEASED_SESSION(EnumSet.of(Outcome.INTERLEAVED, Outcome.SPLIT_SESSION, Outcome.ERROR)),
+		/** Control: {@code writeAPDU} and {@code readAPDU} without a lease, where interleaving is expected to be detected */
+		UNGUARDED(EnumSet.noneOf(Outcome.class));
+
+		final Set<Outcome> forbidden;
+		Scenario(Set<Outcome> forbidden) { this.forbidden = forbidden; }
+	}
+
+	private static final int SESSION_LENGTH = 3;
+
+	public record Result(DeviceKind kind, Scenario scenario, int threads, long[] counts, long elapsedNanos, boolean hung) {
+		public long count(Outcome outcome) {
+			return counts[outcome.ordinal()];
+		}
+
+		public double callsPerSecond() {
+			return Arrays.stream(counts).sum() / (elapsedNanos / 1e9);
+		}
+
+		public boolean failed() {
+			return hung || scenario.forbidden.stream().anyMatch(outcome -> count(outcome) > 0);
+		}
+	}
+
+	public static Result run(DeviceKind kind, Scenario scenario, int threads, long durationNanos) {
+		try (DeviceKind.Fixture fixture = kind.open()) {
+			LedgerDevice device = fixture.device();
+			CountDownLatch start = new CountDownLatch(1), finished = new CountDownLatch(threads);
+			List<long[]> counts = new ArrayList<>();
+			long[] deadline = new long[1];
+			for (int i = 0; i < threads; i++) {
+				int caller = i;
+				long[] threadCounts = new long[Outcome.values().length];
+				counts.add(threadCounts);
+				Thread thread = new Thread(() -> {
+					try {
+						start.await();
+						for (long call = 0; System.nanoTime() - deadline[0] < 0; call++)
+							threadCounts[call(device, scenario, caller, call).ordinal()]++;
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						finished.countDown();
+					}
+				}, "jledger-stress-" + i);
+				thread.setDaemon(true);
+				thread.start();
+			}
+			long startTime = System.nanoTime();
+			deadline[0] = startTime + durationNanos;
+			start.countDown();
+			boolean hung;
+			try {
+				hung = !finished.await(durationNanos + TimeUnit.SECONDS.toNanos(10), TimeUnit.NANOSECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+			long elapsed = System.nanoTime() - startTime;
+			long[] total = new long[Outcome.values().length];
+			for (long[] threadCounts : counts) {
+				for (int o = 0; o < total.length; o++)
+					total[o] += threadCounts[o];
+			}
+			return new Result(kind, scenario, threads, total, elapsed, hung);
+		}
+	}
+
+	private static Outcome call(LedgerDevice device, Scenario scenario, int caller, long call) {
+		try {
+			switch (scenario) {
+				case EXCHANGE -> {
+					APDUCommand command = Echo.command(caller, call);
+					return Echo.check(command, device.exchange(command)) < 0 ? Outcome.INTERLEAVED : Outcome.OK;
+				}
+				case LEASED_SESSION -> {
+					DeviceScheduler.Priority priority = call % 2 == 0 ? DeviceScheduler.Priority.INTERACTIVE : DeviceScheduler.Priority.BATCH;
+					try (DeviceScheduler.Lease lease = device.lease(priority)) {
+						long previous = -1;
+						for (int i = 0; i < SESSION_LENGTH; i++) {
+							APDUCommand command = Echo.command(caller, call * SESSION_LENGTH + i);
+							long sequence = Echo.check(command, device.exchange(command));
+							if (sequence < 0) return Outcome.INTERLEAVED;
+							if (previous >= 0 && sequence != previous + 1) return Outcome.SPLIT_SESSION;
+							previous = sequence;
+						}
+						return Outcome.OK;
+					}
+				}
+				case UNGUARDED -> {
+					APDUCommand command = Echo.command(caller, call);
+					device.writeAPDU(command);
+					return Echo.check(command, device.readAPDU()) < 0 ? Outcome.INTERLEAVED : Outcome.OK;
+				}
+				default -> throw new AssertionError(scenario);
+			}
+		} catch (RuntimeException e) {
+			return Outcome.ERROR;
+		}
+	}
+
+	public static void main(String[] args) {
+		int[] threadCounts = { 1, 2, 4, 8, 16 };
+		long durationMillis = 1000;
+		for (String arg : args) {
+			if (arg.startsWith("--threads=")) {
+				threadCounts = Arrays.stream(arg.substring("--threads=".length()).split(",")).mapToInt(Integer::parseInt).toArray();
+			} else if (arg.startsWith("--duration-ms=")) {
+				durationMillis = Long.parseLong(arg.substring("--duration-ms=".length()));
+			} else {
+				System.err.println("Options: --threads=1,2,4,8,16 --duration-ms=1000");
+				System.exit(2);
+			}
+		}
+		System.out.printf(Locale.ROOT, "%-9s %-15s %7s %12s %10s %12s %14s %8s  %s%n",
+				"device", "scenario", "threads", "calls/s", "OK", "INTERLEAVED", "SPLIT_SESSION", "ERROR", "result");
+		boolean failed = false;
+		for (DeviceKind kind : DeviceKind.values()) {
+			for (Scenario scenario : Scenario.values()) {
+				// Unguarded HID and Speculos exchanges can mix up packets and block forever, the in-memory device shows the detection
+				if (scenario == Scenario.UNGUARDED && kind != DeviceKind.MEMORY) continue;
+				for (int threads : threadCounts) {
+					Result result = run(kind, scenario, threads, TimeUnit.MILLISECONDS.toNanos(durationMillis));
+					failed |= result.failed();
+					System.out.printf(Locale.ROOT, "%-9s %-15s %7d %12.0f %10d %12d %14d %8d  %s%n",
+							kind, scenario, threads, result.callsPerSecond(), result.count(Outcome.OK),
+							result.count(Outcome.INTERLEAVED), result.count(Outcome.SPLIT_SESSION), result.count(Outcome.ERROR),
+							result.hung() ? "HUNG" : result.failed() ? "FORBIDDEN" : "ok");
+					if (result.hung()) {
+						// The threads are still blocked on the device
+						System.exit(1);
+					}
+				}
+			}
+		}
+		if (failed)
+			System.exit(1);
+	}
+}
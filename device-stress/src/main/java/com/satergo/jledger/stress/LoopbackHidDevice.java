@@ -0,0 +1,96 @@
+package com.satergo.jledger.stress;
+
+import org.hid4java.HidDevice;
+import org.hid4java.HidServicesSpecification;
+import org.hid4java.jna.HidDeviceInfoStructure;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fake {@link HidDevice} that reassembles the packets written by {@code Hid4javaLedgerDevice} and answers
+ * every command with {@link Echo} packets on the same channel.
+ */
+public class LoopbackHidDevice extends HidDevice {
+
+	private static final int PACKET_SIZE = 64;
+
+	private final LinkedBlockingQueue<byte[]> packets = new LinkedBlockingQueue<>();
+	private final AtomicLong sequence = new AtomicLong();
+	private ByteBuffer command = ByteBuffer.allocate(0);
+	private volatile boolean closed = true;
+
+	public LoopbackHidDevice() {
+		super(new HidDeviceInfoStructure(), null, new HidServicesSpecification());
+	}
+
+	@Override public int getProductId() { return 0x1011; }
+	@Override public String getLastErrorMessage() { return "closed"; }
+	@Override public boolean isClosed() { return closed; }
+
+	@Override
+	public boolean open() {
+		closed = false;
+		return true;
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+	}
+
+	@Override
+	public synchronized int write(byte[] message, int packetLength, byte reportId) {
+		ByteBuffer packet = ByteBuffer.wrap(message, 0, packetLength);
+		int channel = Short.toUnsignedInt(packet.getShort());
+		packet.get(); // tag
+		if (packet.getShort() == 0)
+			command = ByteBuffer.allocate(Short.toUnsignedInt(packet.getShort()));
+		packet.limit(Math.min(packetLength, packet.position() + command.remaining()));
+		command.put(packet);
+		if (!command.hasRemaining())
+			queueResponse(channel, Echo.respond(command.array(), sequence.getAndIncrement()));
+		return packetLength;
+	}
+
+	private void queueResponse(int channel, byte[] response) {
+		int offset = 0;
+		for (int index = 0; offset < response.length; index++) {
+			ByteBuffer packet = ByteBuffer.allocate(PACKET_SIZE);
+			packet.putShort((short) channel).put((byte) 0x05).putShort((short) index);
+			if (index == 0)
+				packet.putShort((short) response.length);
+			int length = Math.min(packet.remaining(), response.length - offset);
+			packet.put(response, offset, length);
+			offset += length;
+			packets.add(packet.array());
+		}
+	}
+
+	@Override
+	public int read(byte[] data) {
+		try {
+			byte[] packet = packets.take();
+			System.arraycopy(packet, 0, data, 0, PACKET_SIZE);
+			return PACKET_SIZE;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return -1;
+		}
+	}
+
+	@Override
+	public int read(byte[] data, int timeoutMillis) {
+		try {
+			byte[] packet = packets.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+			if (packet == null) return 0;
+			System.arraycopy(packet, 0, data, 0, PACKET_SIZE);
+			return PACKET_SIZE;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package com.satergo.jledger.loadgen;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand-in for a Speculos instance running the Ergo app, speaking the same APDU wire format as
+ * {@code SpeculosLedgerDevice}. Every connection is a separate device that answers the attestation and signing
+ * commands with well-formed but meaningless data after the configured latency. Nothing is confirmed by a user.
+ */
+public class ErgoStubServer implements Closeable {
+
+	private static final int SW_OK = 0x9000, SW_WRONG_LENGTH = 0x6700, SW_BAD_STATE = 0x6985,
+			SW_UNKNOWN_INS = 0x6D00, SW_UNKNOWN_CLA = 0x6E00;
+	private static final int TOKENS_PER_FRAME = 4;
+
+	private final long latencyNanos, jitterNanos;
+	private final AtomicLong exchanges = new AtomicLong();
+	private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+	private @Nullable ServerSocket serverSocket;
+
+	/**
+	 * @param latency how long every command takes
+	 * @param jitter a random amount up to this is added to the latency
+	 */
+	public ErgoStubServer(Duration latency, Duration jitter) {
+		if (latency.isNegative() || jitter.isNegative()) throw new IllegalArgumentException("negative duration");
+		this.latencyNanos = latency.toNanos();
+		this.jitterNanos = jitter.toNanos();
+	}
+
+	/**
+	 * Starts listening on a free port of the loopback address.
+	 */
+	public synchronized void start() {
+		if (serverSocket != null)
+			throw new IllegalStateException("Already started");
+		try {
+			serverSocket = new ServerSocket();
+			serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		ServerSocket server = serverSocket;
+		Thread thread = new Thread(() -> accept(server), "jledger-ergo-stub");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public int getPort() {
+		if (serverSocket == null)
+			throw new IllegalStateException("Not started");
+		return serverSocket.getLocalPort();
+	}
+
+	/** The number of commands answered over all connections */
+	public long getExchangeCount() {
+		return exchanges.get();
+	}
+
+	@Override
+	public synchronized void close() {
+		if (serverSocket == null) return;
+		try {
+			serverSocket.close();
+			for (Socket socket : connections)
+				socket.close();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void accept(ServerSocket server) {
+		while (!server.isClosed()) {
+			Socket socket;
+			try {
+				socket = server.accept();
+				socket.setTcpNoDelay(true);
+			} catch (IOException e) {
+				// closed
+				return;
+			}
+			connections.add(socket);
+			Thread thread = new Thread(() -> serve(socket), "jledger-ergo-stub-connection");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	private void serve(Socket socket) {
+		App app = new App();
+		try (socket) {
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			OutputStream out = socket.getOutputStream();
+			while (true) {
+				int length;
+				try {
+					length = in.readInt();
+				} catch (EOFException e) {
+					return;
+				}
+				byte[] apdu = new byte[length];
+				in.readFully(apdu);
+				byte[] response = app.handle(apdu);
+				simulateLatency();
+				ByteBuffer buffer = ByteBuffer.allocate(4 + response.length);
+				// The length does not include the status word
+				buffer.putInt(response.length - 2).put(response);
+				out.write(buffer.array());
+				exchanges.incrementAndGet();
+			}
+		} catch (IOException e) {
+			// The client disconnected or the server was closed
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			connections.remove(socket);
+		}
+	}
+
+	private void simulateLatency() throws InterruptedException {
+		long nanos = latencyNanos;
+		if (jitterNanos > 0)
+			nanos += ThreadLocalRandom.current().nextLong(jitterNanos + 1);
+		if (nanos > 0)
+			TimeUnit.NANOSECONDS.sleep(nanos);
+	}
+
+	/**
+	 * The state of the emulated app on one device.
+	 */
+	private static final class App {
+		private final SplittableRandom random = new SplittableRandom();
+		private int session;
+		// Attestation
+		private long treeRemaining, registersRemaining;
+		private int tokensExpected;
+		private final List<byte[]> tokens = new ArrayList<>();
+		private long boxValue;
+		private byte @Nullable [] boxId;
+
+		byte[] handle(byte[] apdu) {
+			// Commands without data may leave out the length byte
+			if (apdu.length < 4 || (apdu.length > 4 && apdu.length != 5 + (apdu[4] & 0xFF)))
+				return sw(SW_WRONG_LENGTH);
+			if ((apdu[0] & 0xFF) != 0xE0)
+				return sw(SW_UNKNOWN_CLA);
+			ByteBuffer data = apdu.length > 5 ? ByteBuffer.wrap(apdu, 5, apdu.length - 5).slice() : ByteBuffer.allocate(0);
+			int p1 = apdu[2] & 0xFF, p2 = apdu[3] & 0xFF;
+			return switch (apdu[1] & 0xFF) {
+				case 0x01 -> ok(new byte[] { 2, 0, 0, 0 });
+				case 0x02 -> ok("Ergo".getBytes(StandardCharsets.US_ASCII));
+				case 0x10 -> ok(randomBytes(65));
+				case 0x11 -> ok(randomBytes(38));
+				case 0x20 -> attest(p1, p2, data);
+				case 0x21 -> sign(p1, p2);
+				default -> sw(SW_UNKNOWN_INS);
+			};
+		}
+
+		private byte[] attest(int p1, int p2, ByteBuffer data) {
+			if (p1 == 0x01) {
+				if (data.remaining() < 55) return sw(SW_WRONG_LENGTH);
+				data.position(34);
+				boxValue = data.getLong();
+				treeRemaining = Integer.toUnsignedLong(data.getInt());
+				data.getInt(); // creation height
+				tokensExpected = data.get() & 0xFF;
+				registersRemaining = Integer.toUnsignedLong(data.getInt());
+				tokens.clear();
+				boxId = null;
+				session = 1 + random.nextInt(255);
+				return ok(new byte[] { (byte) session });
+			}
+			if (p2 != session) return sw(SW_BAD_STATE);
+			switch (p1) {
+				case 0x02 -> treeRemaining -= data.remaining();
+				case 0x03 -> {
+					while (data.remaining() >= 40) {
+						byte[] token = new byte[40];
+						data.get(token);
+						tokens.add(token);
+					}
+				}
+				case 0x04 -> registersRemaining -= data.remaining();
+				case 0x05 -> {
+					if (boxId == null || !data.hasRemaining()) return sw(SW_BAD_STATE);
+					return frame(data.get() & 0xFF);
+				}
+				default -> {
+					return sw(SW_BAD_STATE);
+				}
+			}
+			if (treeRemaining < 0 || registersRemaining < 0 || tokens.size() > tokensExpected)
+				return sw(SW_BAD_STATE);
+			if (treeRemaining == 0 && registersRemaining == 0 && tokens.size() == tokensExpected) {
+				boxId = randomBytes(32);
+				return ok(new byte[] { (byte) frameCount() });
+			}
+			return ok(new byte[0]);
+		}
+
+		private int frameCount() {
+			return Math.max(1, (tokens.size() + TOKENS_PER_FRAME - 1) / TOKENS_PER_FRAME);
+		}
+
+		private byte[] frame(int index) {
+			int from = index * TOKENS_PER_FRAME, to = Math.min(tokens.size(), from + TOKENS_PER_FRAME);
+			if (index >= frameCount() || boxId == null) return sw(SW_BAD_STATE);
+			ByteBuffer frame = ByteBuffer.allocate(32 + 2 + 8 + 1 + (to - from) * 40 + 16);
+			frame.put(boxId).put((byte) frameCount()).put((byte) index).putLong(boxValue).put((byte) (to - from));
+			for (int i = from; i < to; i++)
+				frame.put(tokens.get(i));
+			frame.put(randomBytes(16));
+			return ok(frame.array());
+		}
+
+		private byte[] sign(int p1, int p2) {
+			if (p1 == 0x01) {
+				session = 1 + random.nextInt(255);
+				return ok(new byte[] { (byte) session });
+			}
+			if (p2 != session) return sw(SW_BAD_STATE);
+			if (p1 == 0x20) {
+				session = 0;
+				return ok(randomBytes(56));
+			}
+			return ok(new byte[0]);
+		}
+
+		private byte[] randomBytes(int length) {
+			byte[] bytes = new byte[length];
+			random.nextBytes(bytes);
+			return bytes;
+		}
+
+		private static byte[] ok(byte[] data) {
+			byte[] response = new byte[data.length + 2];
+			System.arraycopy(data, 0, response, 0, data.length);
+			response[data.length] = (byte) (SW_OK >> 8);
+			return response;
+		}
+
+		private static byte[] sw(int sw) {
+			return new byte[] { (byte) (sw >> 8), (byte) sw };
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package com.satergo.jledger.loadgen;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps every recorded latency so that the percentiles are exact. Not thread-safe, every worker has its own.
+ */
+final class LatencyRecorder {
+	private long[] values = new long[1024];
+	private int size;
+
+	void record(long nanos) {
+		if (size == values.length)
+			values = Arrays.copyOf(values, size * 2);
+		values[size++] = nanos;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/** @return all recorded values of the recorders, sorted */
+	static long[] merge(List<LatencyRecorder> recorders) {
+		long[] all = new long[recorders.stream().mapToInt(LatencyRecorder::size).sum()];
+		int offset = 0;
+		for (LatencyRecorder recorder : recorders) {
+			System.arraycopy(recorder.values, 0, all, offset, recorder.size);
+			offset += recorder.size;
+		}
+		Arrays.sort(all);
+		return all;
+	}
+}
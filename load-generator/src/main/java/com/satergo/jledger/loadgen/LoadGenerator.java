@@ -0,0 +1,197 @@
+package com.satergo.jledger.loadgen;
+
+import com.satergo.jledger.protocol.ergo.ErgoLedgerException;
+import com.satergo.jledger.protocol.ergo.ErgoProtocol;
+import com.satergo.jledger.transport.speculos.SpeculosLedgerDevice;
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a workload through {@link ErgoProtocol} and {@link SpeculosLedgerDevice} against an {@link ErgoStubServer},
+ * with one device connection per worker thread.
+ * <p>
+ * Run with {@code ./gradlew :load-generator:run --args="--workload=sign --concurrency=8 --output=report.json"},
+ * {@code --help} lists the options.
+ */
+public final class LoadGenerator {
+	private LoadGenerator() {}
+
+	private static final int PRODUCT_ID = 0x1011;
+
+	/**
+	 * @param warmup operations started before the warmup has passed are not measured
+	 */
+	public record Options(Workload workload, int concurrency, Duration warmup, Duration duration, TransactionShape shape,
+						  Duration latency, Duration jitter) {
+		public Options {
+			if (concurrency < 1) throw new IllegalArgumentException("concurrency must be positive");
+			if (warmup.isNegative()) throw new IllegalArgumentException("warmup must not be negative");
+			if (duration.isNegative() || duration.isZero()) throw new IllegalArgumentException("duration must be positive");
+		}
+	}
+
+	public static LoadReport run(Options options, String label) {
+		try (ErgoStubServer server = new ErgoStubServer(options.latency(), options.jitter())) {
+			server.start();
+			String host = InetAddress.getLoopbackAddress().getHostAddress();
+			List<SpeculosLedgerDevice> devices = new ArrayList<>();
+			for (int i = 0; i < options.concurrency(); i++) {
+				SpeculosLedgerDevice device = new SpeculosLedgerDevice(host, server.getPort(), PRODUCT_ID);
+				device.open();
+				devices.add(device);
+			}
+
+			long start = System.nanoTime();
+			long measureStart = start + options.warmup().toNanos();
+			long end = measureStart + options.duration().toNanos();
+			AtomicLong errors = new AtomicLong();
+			AtomicReference<@Nullable String> firstError = new AtomicReference<>();
+			List<LatencyRecorder> recorders = new ArrayList<>();
+			CountDownLatch finished = new CountDownLatch(options.concurrency());
+			for (int i = 0; i < options.concurrency(); i++) {
+				ErgoProtocol protocol = new ErgoProtocol(devices.get(i));
+				LatencyRecorder recorder = new LatencyRecorder();
+				recorders.add(recorder);
+				Random random = new Random(i);
+				Thread thread = new Thread(() -> {
+					try {
+						long operationStart;
+						while ((operationStart = System.nanoTime()) - end < 0) {
+							try {
+								options.workload().run(protocol, options.shape(), random);
+							} catch (ErgoLedgerException e) {
+								errors.incrementAndGet();
+								firstError.compareAndSet(null, e.toString());
+								continue;
+							}
+							if (operationStart - measureStart >= 0)
+								recorder.record(System.nanoTime() - operationStart);
+						}
+					} catch (RuntimeException e) {
+						// The connection is unusable, stop this worker
+						errors.incrementAndGet();
+						firstError.compareAndSet(null, e.toString());
+					} finally {
+						finished.countDown();
+					}
+				}, "jledger-load-worker-" + i);
+				thread.setDaemon(true);
+				thread.start();
+			}
+
+			try {
+				TimeUnit.NANOSECONDS.sleep(measureStart - System.nanoTime());
+				long exchangesAtStart = server.getExchangeCount();
+				finished.await();
+				// Operations started before the end are measured until they finish, so the measurement lasts
+				// until the workers have stopped, which is longer than the duration when the latency is high
+				Duration measured = Duration.ofNanos(System.nanoTime() - measureStart);
+				long exchanges = server.getExchangeCount() - exchangesAtStart;
+				long[] latencies = LatencyRecorder.merge(recorders);
+				for (SpeculosLedgerDevice device : devices)
+					device.close();
+				return new LoadReport(label, options, measured, latencies.length, errors.get(), exchanges, latencies, firstError.get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	private static final String USAGE = """
+			Options (--name=value):
+			  --workload        attest or sign (default sign)
+			  --concurrency     worker threads, each with its own device (default 4)
+			  --warmup          seconds before measuring (default 2)
+			  --duration        seconds to measure (default 10)
+			  --inputs          input boxes per transaction (default 2)
+			  --data-inputs     data inputs per transaction (default 0)
+			  --outputs         outputs per transaction besides change and fee (default 2)
+			  --tokens          tokens per box (default 2)
+			  --tree-size       ErgoTree bytes per box (default 36)
+			  --registers-size  register bytes per box (default 0)
+			  --latency-ms      device latency per command (default 1)
+			  --jitter-ms       random extra latency per command, up to this (default 0)
+			  --label           free-form label written to the report (default "")
+			  --output          file to write the JSON report to (default standard output)""";
+
+	public static void main(String[] args) throws IOException {
+		Map<String, String> values = new HashMap<>();
+		for (String arg : args) {
+			if (arg.equals("--help")) {
+				System.out.println(USAGE);
+				return;
+			}
+			int equals = arg.indexOf('=');
+			if (!arg.startsWith("--") || equals < 0) {
+				System.err.println("Invalid argument " + arg + "\n" + USAGE);
+				System.exit(2);
+			}
+			values.put(arg.substring(2, equals), arg.substring(equals + 1));
+		}
+		String label = Objects.requireNonNullElse(values.remove("label"), "");
+		String output = values.remove("output");
+		String workload = Objects.requireNonNullElse(values.remove("workload"), "sign");
+		Options options;
+		try {
+			options = new Options(
+					Workload.valueOf(workload.toUpperCase(Locale.ROOT)),
+					intOption(values, "concurrency", 4),
+					Duration.ofMillis(Math.round(doubleOption(values, "warmup", 2) * 1000)),
+					Duration.ofMillis(Math.round(doubleOption(values, "duration", 10) * 1000)),
+					new TransactionShape(intOption(values, "inputs", 2), intOption(values, "data-inputs", 0),
+							intOption(values, "outputs", 2), intOption(values, "tokens", 2),
+							intOption(values, "tree-size", 36), intOption(values, "registers-size", 0)),
+					Duration.ofNanos(Math.round(doubleOption(values, "latency-ms", 1) * 1e6)),
+					Duration.ofNanos(Math.round(doubleOption(values, "jitter-ms", 0) * 1e6)));
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage() + "\n" + USAGE);
+			System.exit(2);
+			return;
+		}
+		if (!values.isEmpty()) {
+			System.err.println("Unknown options " + values.keySet() + "\n" + USAGE);
+			System.exit(2);
+		}
+		LoadReport report = run(options, label);
+		if (output == null) {
+			System.out.println(report.toJson());
+		} else {
+			Files.writeString(Path.of(output), report.toJson() + "\n");
+		}
+	}
+
+	private static int intOption(Map<String, String> values, String name, int defaultValue) {
+		String value = values.remove(name);
+		try {
+			return value == null ? defaultValue : Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("--" + name + " must be an integer");
+		}
+	}
+
+	private static double doubleOption(Map<String, String> values, String name, double defaultValue) {
+		String value = values.remove(name);
+		try {
+			return value == null ? defaultValue : Double.parseDouble(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("--" + name + " must be a number");
+		}
+	}
+}
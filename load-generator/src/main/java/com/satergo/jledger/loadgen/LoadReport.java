@@ -0,0 +1,102 @@
+package com.satergo.jledger.loadgen;
+
+import org.jspecify.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * The result of a load generator run. Latencies are of complete workload operations.
+ *
+ * @param label a free-form label for telling runs apart, for example the library version
+ * @param measured the time from the end of the warmup until the last operation finished, at least the configured duration
+ * @param exchanges the number of commands the device answered during the measurement
+ * @param firstError the message of the first error, if there were any
+ */
+public record LoadReport(String label, LoadGenerator.Options options, Duration measured, long operations, long errors,
+						 long exchanges, long[] sortedLatencyNanos, @Nullable String firstError) {
+
+	public double throughputPerSecond() {
+		return operations / seconds(measured);
+	}
+
+	public double exchangesPerSecond() {
+		return exchanges / seconds(measured);
+	}
+
+	/**
+	 * @param percentile 0-100
+	 * @return the latency that {@code percentile} percent of the operations did not exceed, or zero if there were none
+	 */
+	public Duration latencyPercentile(double percentile) {
+		if (percentile < 0 || percentile > 100) throw new IllegalArgumentException("percentile must be 0-100");
+		if (sortedLatencyNanos.length == 0) return Duration.ZERO;
+		// nearest rank, in decimal so that for example 99.9% of 1000 is exactly 999
+		int rank = BigDecimal.valueOf(percentile).multiply(BigDecimal.valueOf(sortedLatencyNanos.length))
+				.divide(BigDecimal.valueOf(100)).setScale(0, RoundingMode.CEILING).intValueExact();
+		return Duration.ofNanos(sortedLatencyNanos[Math.max(0, rank - 1)]);
+	}
+
+	public Duration meanLatency() {
+		if (sortedLatencyNanos.length == 0) return Duration.ZERO;
+		double sum = 0;
+		for (long nanos : sortedLatencyNanos)
+			sum += nanos;
+		return Duration.ofNanos(Math.round(sum / sortedLatencyNanos.length));
+	}
+
+	private static double seconds(Duration duration) {
+		return duration.toNanos() / 1e9;
+	}
+
+	private static String micros(Duration duration) {
+		return String.format(Locale.ROOT, "%.1f", duration.toNanos() / 1e3);
+	}
+
+	private static String quote(String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (char c : s.toCharArray()) {
+			switch (c) {
+				case '"' -> sb.append("\\\"");
+				case '\\' -> sb.append("\\\\");
+				default -> {
+					if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+					else sb.append(c);
+				}
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+	/**
+	 * A JSON object with the configuration and the results, latencies are in microseconds.
+	 */
+	public String toJson() {
+		TransactionShape shape = options.shape();
+		return "{\n" +
+				"  \"label\": " + quote(label) + ",\n" +
+				"  \"java\": " + quote(System.getProperty("java.version")) + ",\n" +
+				"  \"workload\": " + quote(options.workload().name().toLowerCase(Locale.ROOT)) + ",\n" +
+				"  \"concurrency\": " + options.concurrency() + ",\n" +
+				"  \"shape\": {\"inputs\": " + shape.inputs() + ", \"dataInputs\": " + shape.dataInputs() +
+				", \"outputs\": " + shape.outputs() + ", \"tokensPerBox\": " + shape.tokensPerBox() +
+				", \"ergoTreeSize\": " + shape.ergoTreeSize() + ", \"registersSize\": " + shape.registersSize() + "},\n" +
+				"  \"deviceLatencyMicros\": " + micros(options.latency()) + ",\n" +
+				"  \"deviceJitterMicros\": " + micros(options.jitter()) + ",\n" +
+				"  \"measuredSeconds\": " + String.format(Locale.ROOT, "%.3f", seconds(measured)) + ",\n" +
+				"  \"operations\": " + operations + ",\n" +
+				"  \"errors\": " + errors + ",\n" +
+				"  \"firstError\": " + (firstError == null ? "null" : quote(firstError)) + ",\n" +
+				"  \"throughputPerSecond\": " + String.format(Locale.ROOT, "%.2f", throughputPerSecond()) + ",\n" +
+				"  \"exchangesPerSecond\": " + String.format(Locale.ROOT, "%.2f", exchangesPerSecond()) + ",\n" +
+				"  \"latencyMicros\": {\"mean\": " + micros(meanLatency()) +
+				", \"p50\": " + micros(latencyPercentile(50)) +
+				", \"p90\": " + micros(latencyPercentile(90)) +
+				", \"p99\": " + micros(latencyPercentile(99)) +
+				", \"p999\": " + micros(latencyPercentile(99.9)) +
+				", \"max\": " + micros(latencyPercentile(100)) + "}\n" +
+				"}";
+	}
+}
@@ -0,0 +1,22 @@
+package com.satergo.jledger.loadgen;
+
+/**
+ * The size of the transactions and boxes used by the workloads.
+ *
+ * @param inputs the number of input boxes, each of which is attested
+ * @param dataInputs the number of data inputs
+ * @param outputs the number of outputs, not counting the change and miner fee outputs
+ * @param tokensPerBox the number of tokens in every input and output box
+ * @param ergoTreeSize the size of the ErgoTree of every box in bytes
+ * @param registersSize the size of the additional registers of every box in bytes
+ */
+public record TransactionShape(int inputs, int dataInputs, int outputs, int tokensPerBox, int ergoTreeSize, int registersSize) {
+	public TransactionShape {
+		if (inputs < 1 || inputs > 0xFFFF) throw new IllegalArgumentException("inputs must be 1-65535");
+		if (dataInputs < 0 || dataInputs > 0xFFFF) throw new IllegalArgumentException("dataInputs must be 0-65535");
+		if (outputs < 0 || outputs > 0xFFFF - 2) throw new IllegalArgumentException("outputs must be 0-65533");
+		if (tokensPerBox < 0 || tokensPerBox > 255) throw new IllegalArgumentException("tokensPerBox must be 0-255");
+		if (ergoTreeSize < 1) throw new IllegalArgumentException("ergoTreeSize must be positive");
+		if (registersSize < 0) throw new IllegalArgumentException("registersSize must not be negative");
+	}
+}
@@ -0,0 +1,131 @@
+package com.satergo.jledger.loadgen;
+
+import com.satergo.jledger.protocol.ergo.ErgoLedgerException;
+import com.satergo.jledger.protocol.ergo.ErgoNetworkType;
+import com.satergo.jledger.protocol.ergo.ErgoProtocol;
+import com.satergo.jledger.protocol.ergo.ErgoResponse;
+import com.satergo.jledger.protocol.ergo.TokenIndexTable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+/**
+ * The operations whose latency is measured, each is a complete flow of commands.
+ */
+public enum Workload {
+	/** Attests every input box of the transaction */
+	ATTEST {
+		@Override
+		void run(ErgoProtocol protocol, TransactionShape shape, Random random) throws ErgoLedgerException {
+			List<ErgoProtocol.TokenValue> tokens = tokens(shape, random);
+			for (int i = 0; i < shape.inputs(); i++)
+				attest(protocol, shape, tokens, random);
+		}
+	},
+	/** Attests every input box and signs the transaction */
+	SIGN {
+		@Override
+		void run(ErgoProtocol protocol, TransactionShape shape, Random random) throws ErgoLedgerException {
+			List<ErgoProtocol.TokenValue> tokens = tokens(shape, random);
+			List<List<ErgoResponse.AttestedBoxFrame>> inputs = new ArrayList<>();
+			for (int i = 0; i < shape.inputs(); i++)
+				inputs.add(attest(protocol, shape, tokens, random));
+
+			TokenIndexTable tokenTable = new TokenIndexTable();
+			for (ErgoProtocol.TokenValue token : tokens)
+				tokenTable.add(token.id());
+			int session = protocol.startP2PKSigning(ErgoNetworkType.MAINNET, PATH, null);
+			// The change and miner fee outputs are added to the requested ones
+			protocol.startTransaction(session, shape.inputs(), shape.dataInputs(), tokenTable.size(), shape.outputs() + 2);
+			List<byte[]> tokenIds = tokenTable.getIdBytes();
+			for (int i = 0; i < tokenIds.size(); i += 7)
+				protocol.addTokenIds(session, tokenIds.subList(i, Math.min(tokenIds.size(), i + 7)));
+			for (List<ErgoResponse.AttestedBoxFrame> frames : inputs) {
+				for (ErgoResponse.AttestedBoxFrame frame : frames)
+					protocol.addInputBoxFrame(session, frame, 0);
+			}
+			for (int i = 0; i < shape.dataInputs(); i += 7) {
+				List<byte[]> boxIds = new ArrayList<>();
+				for (int j = i; j < Math.min(shape.dataInputs(), i + 7); j++)
+					boxIds.add(randomBytes(random, 32));
+				protocol.addDataInputs(session, boxIds);
+			}
+			List<ErgoProtocol.TokenIndexValue> outputTokens = new ArrayList<>();
+			for (ErgoProtocol.TokenValue token : tokens)
+				outputTokens.add(tokenTable.indexValue(token.id(), 1 + random.nextInt(1000)));
+			for (int i = 0; i < shape.outputs(); i++) {
+				protocol.addOutputBoxStart(session, 1_000_000, shape.ergoTreeSize(), HEIGHT, outputTokens.size(), shape.registersSize());
+				sendEachChunk(shape.ergoTreeSize(), random, chunk -> protocol.addOutputBoxErgoTreeChunk(session, chunk));
+				// 21 token index and value pairs fit in one command
+				for (int j = 0; j < outputTokens.size(); j += 21)
+					protocol.addOutputBoxTokens(session, outputTokens.subList(j, Math.min(outputTokens.size(), j + 21)));
+				sendEachChunk(shape.registersSize(), random, chunk -> protocol.addOutputBoxRegistersChunk(session, chunk));
+			}
+			protocol.addOutputBoxStart(session, 1_000_000, 36, HEIGHT, 0, 0);
+			protocol.addOutputBoxChangeTree(session, PATH);
+			protocol.addOutputBoxStart(session, 1_000_000, 105, HEIGHT, 0, 0);
+			protocol.addOutputBoxMinerFeeTree(session);
+			byte[] signature = protocol.confirmAndSign(session);
+			if (signature.length != 56)
+				throw new IllegalStateException("Signature length " + signature.length);
+		}
+	};
+
+	private static final int[] PATH = { 0x8000002C, 0x800001AD, 0x80000000, 0, 0 };
+	private static final int HEIGHT = 1_000_000;
+	private static final int CHUNK_SIZE = 255;
+
+	abstract void run(ErgoProtocol protocol, TransactionShape shape, Random random) throws ErgoLedgerException;
+
+	private interface ChunkSender {
+		Optional<Integer> send(byte[] chunk) throws ErgoLedgerException;
+	}
+
+	private interface VoidChunkSender {
+		void send(byte[] chunk) throws ErgoLedgerException;
+	}
+
+	private static List<ErgoProtocol.TokenValue> tokens(TransactionShape shape, Random random) {
+		List<ErgoProtocol.TokenValue> tokens = new ArrayList<>();
+		for (int i = 0; i < shape.tokensPerBox(); i++)
+			tokens.add(new ErgoProtocol.TokenValue(randomBytes(random, 32), 1 + random.nextInt(1_000_000)));
+		return tokens;
+	}
+
+	private static List<ErgoResponse.AttestedBoxFrame> attest(ErgoProtocol protocol, TransactionShape shape, List<ErgoProtocol.TokenValue> tokens, Random random) throws ErgoLedgerException {
+		int session = protocol.attestBoxStart(randomBytes(random, 32), random.nextInt(4), 1_000_000, shape.ergoTreeSize(),
+				HEIGHT, tokens.size(), shape.registersSize(), null);
+		Optional<Integer> frameCount = sendChunks(shape.ergoTreeSize(), random, chunk -> protocol.attestAddErgoTreeChunk(session, chunk));
+		// 6 tokens fit in one command
+		for (int i = 0; i < tokens.size(); i += 6)
+			frameCount = protocol.attestAddTokens(session, tokens.subList(i, Math.min(tokens.size(), i + 6)));
+		if (shape.registersSize() > 0)
+			frameCount = sendChunks(shape.registersSize(), random, chunk -> protocol.attestAddRegistersChunk(session, chunk));
+		int frames = frameCount.orElseThrow(() -> new IllegalStateException("Box not finished"));
+		List<ErgoResponse.AttestedBoxFrame> result = new ArrayList<>(frames);
+		for (int i = 0; i < frames; i++)
+			result.add(protocol.getAttestedBoxFrame(session, i));
+		return result;
+	}
+
+	/** @return the result of the last chunk */
+	private static Optional<Integer> sendChunks(int size, Random random, ChunkSender sender) throws ErgoLedgerException {
+		Optional<Integer> result = Optional.empty();
+		for (int offset = 0; offset < size; offset += CHUNK_SIZE)
+			result = sender.send(randomBytes(random, Math.min(CHUNK_SIZE, size - offset)));
+		return result;
+	}
+
+	private static void sendEachChunk(int size, Random random, VoidChunkSender sender) throws ErgoLedgerException {
+		for (int offset = 0; offset < size; offset += CHUNK_SIZE)
+			sender.send(randomBytes(random, Math.min(CHUNK_SIZE, size - offset)));
+	}
+
+	private static byte[] randomBytes(Random random, int length) {
+		byte[] bytes = new byte[length];
+		random.nextBytes(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,11 @@
+import org.jspecify.annotations.NullMarked;
+
+@NullMarked
+module com.satergo.jledger.loadgen {
+
+	requires static org.jspecify;
+	requires com.satergo.jledger.core;
+	requires com.satergo.jledger.protocol.ergo;
+	requires com.satergo.jledger.transport.speculos;
+	exports com.satergo.jledger.loadgen;
+}
\ No newline at end of file
@@ -0,0 +1,26 @@
+package com.satergo.jledger.loadgen;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+
+	/** Operations that are slower than the duration are measured until they finish */
+	@Test
+	@Timeout(30)
+	void measuresUntilOperationsFinish() {
+		LoadGenerator.Options options = new LoadGenerator.Options(Workload.ATTEST, 2, Duration.ZERO, Duration.ofMillis(50),
+				new TransactionShape(1, 0, 1, 1, 36, 0), Duration.ofMillis(20), Duration.ZERO);
+		LoadReport report = LoadGenerator.run(options, "test");
+		assertEquals(0, report.errors(), report.firstError());
+		assertTrue(report.operations() >= 2);
+		assertTrue(report.measured().compareTo(report.latencyPercentile(100)) >= 0,
+				report.measured() + " shorter than an operation of " + report.latencyPercentile(100));
+		assertTrue(report.measured().compareTo(options.duration()) > 0);
+		assertEquals(report.operations() / (report.measured().toNanos() / 1e9), report.throughputPerSecond(), 1e-9);
+	}
+}
@@ -0,0 +1,101 @@
+package com.satergo.jledger.loadgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadReportTest {
+
+	private static final LoadGenerator.Options OPTIONS = new LoadGenerator.Options(Workload.SIGN, 3, Duration.ofSeconds(1),
+			Duration.ofSeconds(2), new TransactionShape(2, 1, 3, 4, 36, 8), Duration.ofMillis(1), Duration.ofNanos(500_000));
+
+	/** Latencies of 1 to count microseconds, recorded out of order by two recorders */
+	private static long[] latencies(int count) {
+		LatencyRecorder a = new LatencyRecorder(), b = new LatencyRecorder();
+		for (int i = count; i >= 1; i--)
+			(i % 2 == 0 ? a : b).record(i * 1000L);
+		return LatencyRecorder.merge(List.of(a, b, new LatencyRecorder()));
+	}
+
+	private static LoadReport report(long[] latencies, String firstError) {
+		return new LoadReport("run \"1\"", OPTIONS, Duration.ofMillis(2500), latencies.length, 2, 5000, latencies, firstError);
+	}
+
+	@Test
+	void mergeSortsAllValues() {
+		long[] merged = latencies(3000);
+		assertEquals(3000, merged.length);
+		for (int i = 0; i < merged.length; i++)
+			assertEquals((i + 1) * 1000L, merged[i]);
+	}
+
+	/** Nearest rank: the smallest value that at least the percentile of the values do not exceed */
+	@Test
+	void percentiles() {
+		LoadReport report = report(latencies(1000), null);
+		assertEquals(Duration.ofNanos(1000), report.latencyPercentile(0));
+		assertEquals(Duration.ofNanos(1000), report.latencyPercentile(0.1));
+		assertEquals(Duration.ofNanos(2000), report.latencyPercentile(0.2));
+		assertEquals(Duration.ofNanos(500_000), report.latencyPercentile(50));
+		assertEquals(Duration.ofNanos(990_000), report.latencyPercentile(99));
+		assertEquals(Duration.ofNanos(999_000), report.latencyPercentile(99.9));
+		assertEquals(Duration.ofNanos(1_000_000), report.latencyPercentile(100));
+		assertEquals(Duration.ofNanos(500_500), report.meanLatency());
+
+		LoadReport small = report(latencies(10), null);
+		assertEquals(Duration.ofNanos(5000), small.latencyPercentile(50));
+		assertEquals(Duration.ofNanos(10_000), small.latencyPercentile(90.1));
+		assertEquals(Duration.ofNanos(10_000), small.latencyPercentile(99.9));
+
+		assertThrows(IllegalArgumentException.class, () -> small.latencyPercentile(100.1));
+		assertThrows(IllegalArgumentException.class, () -> small.latencyPercentile(-1));
+	}
+
+	@Test
+	void noOperations() {
+		LoadReport report = report(new long[0], null);
+		assertEquals(Duration.ZERO, report.latencyPercentile(99));
+		assertEquals(Duration.ZERO, report.meanLatency());
+		assertEquals(0, report.throughputPerSecond(), 0);
+	}
+
+	@Test
+	void ratesUseMeasuredTime() {
+		LoadReport report = report(latencies(1000), null);
+		assertEquals(400, report.throughputPerSecond(), 1e-9);
+		assertEquals(2000, report.exchangesPerSecond(), 1e-9);
+	}
+
+	private static String field(String json, String name) {
+		Matcher matcher = Pattern.compile("\"" + name + "\": (\"(?:[^\"\\\\]|\\\\.)*\"|\\{[^}]*}|[^,\\n]+)").matcher(json);
+		assertTrue(matcher.find(), name + " missing");
+		return matcher.group(1);
+	}
+
+	@Test
+	void jsonShape() {
+		String json = report(latencies(1000), "line\nbreak").toJson();
+		assertTrue(json.startsWith("{\n") && json.endsWith("\n}"));
+		assertEquals("\"run \\\"1\\\"\"", field(json, "label"));
+		assertEquals("\"sign\"", field(json, "workload"));
+		assertEquals("3", field(json, "concurrency"));
+		assertEquals("{\"inputs\": 2, \"dataInputs\": 1, \"outputs\": 3, \"tokensPerBox\": 4, \"ergoTreeSize\": 36, \"registersSize\": 8}", field(json, "shape"));
+		assertEquals("1000.0", field(json, "deviceLatencyMicros"));
+		assertEquals("500.0", field(json, "deviceJitterMicros"));
+		assertEquals("2.500", field(json, "measuredSeconds"));
+		assertEquals("1000", field(json, "operations"));
+		assertEquals("2", field(json, "errors"));
+		assertEquals("\"line\\u000abreak\"", field(json, "firstError"));
+		assertEquals("400.00", field(json, "throughputPerSecond"));
+		assertEquals("2000.00", field(json, "exchangesPerSecond"));
+		assertEquals("{\"mean\": 500.5, \"p50\": 500.0, \"p90\": 900.0, \"p99\": 990.0, \"p999\": 999.0, \"max\": 1000.0}", field(json, "latencyMicros"));
+		// Every field is on its own line and separated by a comma
+		assertEquals(16, json.lines().count());
+		assertEquals("null", field(report(new long[0], null).toJson(), "firstError"));
+	}
+}
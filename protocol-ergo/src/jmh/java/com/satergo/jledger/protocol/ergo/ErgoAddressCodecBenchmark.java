@@ -0,0 +1,79 @@
+package com.satergo.jledger.protocol.ergo;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run with {@code ./gradlew :protocol-ergo:jmh}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ErgoAddressCodecBenchmark {
+
+	private static final String ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+	private static final BigInteger FIFTY_EIGHT = BigInteger.valueOf(58);
+
+	@Param("1000")
+	public int count;
+
+	private byte[][] addressBytes;
+	private String[] addresses;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(0);
+		addresses = new String[count];
+		for (int i = 0; i < count; i++) {
+			byte[] publicKey = new byte[33];
+			random.nextBytes(publicKey);
+			publicKey[0] = 0x02;
+			addresses[i] = ErgoAddressCodec.encode(ErgoNetworkType.MAINNET, ErgoAddressCodec.Type.P2PK, publicKey);
+		}
+		addressBytes = ErgoAddressCodec.decodeAll(addresses);
+	}
+
+	@Benchmark
+	public String[] encodeAll() {
+		return ErgoAddressCodec.encodeAll(addressBytes);
+	}
+
+	@Benchmark
+	public String[] encodeEach() {
+		String[] result = new String[count];
+		for (int i = 0; i < count; i++)
+			result[i] = ErgoAddressCodec.encode(addressBytes[i]);
+		return result;
+	}
+
+	@Benchmark
+	public byte[][] decodeAll() {
+		return ErgoAddressCodec.decodeAll(addresses);
+	}
+
+	/** The usual BigInteger implementation without checksum verification, for comparison */
+	@Benchmark
+	public String[] encodeBigInteger() {
+		String[] result = new String[count];
+		for (int i = 0; i < count; i++) {
+			byte[] bytes = addressBytes[i];
+			StringBuilder sb = new StringBuilder();
+			BigInteger n = new BigInteger(1, bytes);
+			while (n.signum() > 0) {
+				BigInteger[] qr = n.divideAndRemainder(FIFTY_EIGHT);
+				sb.append(ALPHABET.charAt(qr[1].intValue()));
+				n = qr[0];
+			}
+			for (int z = 0; z < bytes.length && bytes[z] == 0; z++)
+				sb.append('1');
+			result[i] = sb.reverse().toString();
+		}
+		return result;
+	}
+}
@@ -0,0 +1,95 @@
+package com.satergo.jledger.protocol.ergo;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Run with {@code ./gradlew :protocol-ergo:jmh}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ErgoSignatureVerifierBenchmark {
+
+	private static final int COUNT = 256;
+
+	/** How many different public keys signed the messages */
+	@Param({ "1", "256" })
+	public int keys;
+
+	private List<ErgoSignatureVerifier.SignatureCheck> checks;
+	private ErgoSignatureVerifier cachingVerifier;
+	private final ErgoSignatureVerifier uncachedVerifier = new ErgoSignatureVerifier(0, 1);
+
+	@Setup
+	public void setup() {
+		Random random = new Random(0);
+		BigInteger[] secrets = new BigInteger[keys];
+		byte[][] publicKeys = new byte[keys][];
+		for (int i = 0; i < keys; i++) {
+			secrets[i] = new BigInteger(255, random).add(BigInteger.ONE);
+			publicKeys[i] = Secp256k1.compress(Secp256k1.multiply(Secp256k1.G, secrets[i]));
+		}
+		checks = new ArrayList<>(COUNT);
+		for (int i = 0; i < COUNT; i++) {
+			byte[] message = new byte[200];
+			random.nextBytes(message);
+			BigInteger r = new BigInteger(255, random).add(BigInteger.ONE);
+			byte[] commitment = Secp256k1.compress(Secp256k1.multiply(Secp256k1.G, r));
+			byte[] challenge = Arrays.copyOf(ErgoSignatureVerifier.challenge(publicKeys[i % keys], commitment, message), ErgoSignatureVerifier.CHALLENGE_LENGTH);
+			BigInteger z = r.add(new BigInteger(1, challenge).multiply(secrets[i % keys])).mod(Secp256k1.N);
+			byte[] signature = new byte[ErgoSignatureVerifier.SIGNATURE_LENGTH];
+			System.arraycopy(challenge, 0, signature, 0, challenge.length);
+			toBytes32(z, signature, challenge.length);
+			checks.add(new ErgoSignatureVerifier.SignatureCheck(message, publicKeys[i % keys], signature));
+		}
+		cachingVerifier = new ErgoSignatureVerifier();
+		if (!Arrays.equals(cachingVerifier.verifyAll(checks), trues(COUNT)))
+			throw new IllegalStateException("benchmark signatures do not verify");
+	}
+
+	private static void toBytes32(BigInteger value, byte[] out, int offset) {
+		byte[] bytes = value.toByteArray();
+		int length = Math.min(bytes.length, 32);
+		System.arraycopy(bytes, bytes.length - length, out, offset + 32 - length, length);
+	}
+
+	private static boolean[] trues(int count) {
+		boolean[] array = new boolean[count];
+		Arrays.fill(array, true);
+		return array;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public int verifyEachUncached() {
+		int valid = 0;
+		for (ErgoSignatureVerifier.SignatureCheck check : checks) {
+			if (uncachedVerifier.verify(check.message(), check.publicKey(), check.signature()))
+				valid++;
+		}
+		return valid;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public boolean[] verifyAllUncached() {
+		return uncachedVerifier.verifyAll(checks);
+	}
+
+	/** Repeated keys keep their tables between invocations */
+	@Benchmark
+	@OperationsPerInvocation(COUNT)
+	public boolean[] verifyAllCaching() {
+		return cachingVerifier.verifyAll(checks);
+	}
+}
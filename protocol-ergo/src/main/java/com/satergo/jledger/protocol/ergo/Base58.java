@@ -0,0 +1,118 @@
+package com.satergo.jledger.protocol.ergo;
+
+import java.util.Arrays;
+
+/**
+ * Base58 with the Bitcoin alphabet. Instead of dividing a {@link java.math.BigInteger} by 58 for every digit,
+ * the number is kept in limbs of 5 base58 digits (encoding) or 4 bytes (decoding), which only need long arithmetic.
+ * An instance reuses its limb buffer, so it must not be shared between threads.
+ */
+final class Base58 {
+
+	private static final char[] ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz".toCharArray();
+	private static final byte[] INDEXES = new byte[128];
+	static {
+		Arrays.fill(INDEXES, (byte) -1);
+		for (int i = 0; i < ALPHABET.length; i++)
+			INDEXES[ALPHABET[i]] = (byte) i;
+	}
+
+	/** 58^5, the largest power of 58 for which a limb multiplied by 2^32 still fits in a long */
+	private static final int LIMB_BASE = 58 * 58 * 58 * 58 * 58;
+	private static final int[] POWERS = { 1, 58, 58 * 58, 58 * 58 * 58, 58 * 58 * 58 * 58, LIMB_BASE };
+
+	private int[] limbs = new int[16];
+
+	String encode(byte[] input) {
+		int zeros = 0;
+		while (zeros < input.length && input[zeros] == 0)
+			zeros++;
+		// log(256) / log(58^5) is just under 0.2731
+		int[] limbs = limbs(input.length * 2731 / 10000 + 2);
+		int limbCount = 0;
+		int pos = zeros;
+		int chunkLength = (input.length - pos) % 4 == 0 ? 4 : (input.length - pos) % 4;
+		while (pos < input.length) {
+			long carry = 0;
+			for (int i = 0; i < chunkLength; i++)
+				carry = (carry << 8) | (input[pos++] & 0xFF);
+			int shift = 8 * chunkLength;
+			for (int i = 0; i < limbCount; i++) {
+				carry += (long) limbs[i] << shift;
+				limbs[i] = (int) (carry % LIMB_BASE);
+				carry /= LIMB_BASE;
+			}
+			while (carry != 0) {
+				limbs[limbCount++] = (int) (carry % LIMB_BASE);
+				carry /= LIMB_BASE;
+			}
+			chunkLength = 4;
+		}
+		char[] out = new char[zeros + limbCount * 5];
+		int p = out.length;
+		for (int i = 0; i < limbCount; i++) {
+			int limb = limbs[i];
+			for (int d = 0; d < 5; d++) {
+				out[--p] = ALPHABET[limb % 58];
+				limb /= 58;
+			}
+		}
+		// The most significant limb may have produced leading zero digits
+		while (p < out.length && out[p] == ALPHABET[0])
+			p++;
+		for (int i = 0; i < zeros; i++)
+			out[--p] = ALPHABET[0];
+		return new String(out, p, out.length - p);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the input contains characters outside the alphabet
+	 */
+	byte[] decode(CharSequence input) {
+		int zeros = 0;
+		while (zeros < input.length() && input.charAt(zeros) == ALPHABET[0])
+			zeros++;
+		// log(58) / log(2^32) is just under 0.1831
+		int[] limbs = limbs(input.length() * 1831 / 10000 + 2);
+		int limbCount = 0;
+		int pos = zeros;
+		int chunkLength = (input.length() - pos) % 5 == 0 ? 5 : (input.length() - pos) % 5;
+		while (pos < input.length()) {
+			long carry = 0;
+			for (int i = 0; i < chunkLength; i++)
+				carry = carry * 58 + digit(input.charAt(pos++));
+			long multiplier = POWERS[chunkLength];
+			for (int i = 0; i < limbCount; i++) {
+				carry += Integer.toUnsignedLong(limbs[i]) * multiplier;
+				limbs[i] = (int) carry;
+				carry >>>= 32;
+			}
+			while (carry != 0) {
+				limbs[limbCount++] = (int) carry;
+				carry >>>= 32;
+			}
+			chunkLength = 5;
+		}
+		int significant = limbCount * 4;
+		// The most significant limb may have leading zero bytes
+		if (limbCount > 0)
+			significant -= Integer.numberOfLeadingZeros(limbs[limbCount - 1]) / 8;
+		byte[] out = new byte[zeros + significant];
+		for (int i = 0; i < significant; i++)
+			out[out.length - 1 - i] = (byte) (limbs[i >>> 2] >>> (8 * (i & 3)));
+		return out;
+	}
+
+	private static int digit(char c) {
+		int digit = c < 128 ? INDEXES[c] : -1;
+		if (digit == -1)
+			throw new IllegalArgumentException("Invalid base58 character '" + c + "'");
+		return digit;
+	}
+
+	private int[] limbs(int length) {
+		if (limbs.length < length)
+			limbs = new int[length];
+		return limbs;
+	}
+}
@@ -0,0 +1,125 @@
+package com.satergo.jledger.protocol.ergo;
+
+import java.util.Arrays;
+
+/**
+ * Converts between the raw address bytes returned by {@link ErgoProtocol#deriveAddress} and the Base58 string form.
+ * <p>
+ * The raw bytes are the prefix (network type + address type), the content, and the first 4 bytes of the
+ * Blake2b-256 hash of the prefix and content as a checksum. The prefix, the length of P2PK addresses and
+ * the checksum are verified in both directions.
+ */
+public final class ErgoAddressCodec {
+	private ErgoAddressCodec() {}
+
+	public static final int CHECKSUM_LENGTH = 4;
+	/** A compressed public key */
+	private static final int P2PK_CONTENT_LENGTH = 33;
+
+	public enum Type {
+		P2PK(0x01), P2SH(0x02), P2S(0x03);
+
+		final int id;
+		Type(int id) { this.id = id; }
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the prefix, length or checksum is invalid
+	 */
+	public static String encode(byte[] addressBytes) {
+		verify(addressBytes, new Blake2b256(), new byte[Blake2b256.DIGEST_LENGTH]);
+		return new Base58().encode(addressBytes);
+	}
+
+	/**
+	 * Creates the address from its parts, calculating the checksum.
+	 * @param content the public key for P2PK, the script hash for P2SH or the script for P2S
+	 * @throws IllegalArgumentException if the content of a P2PK address is not a compressed public key
+	 */
+	public static String encode(ErgoNetworkType networkType, Type type, byte[] content) {
+		if (type == Type.P2PK && content.length != P2PK_CONTENT_LENGTH)
+			throw new IllegalArgumentException("Invalid P2PK content length " + content.length);
+		byte[] addressBytes = new byte[1 + content.length + CHECKSUM_LENGTH];
+		addressBytes[0] = (byte) (networkType.id + type.id);
+		System.arraycopy(content, 0, addressBytes, 1, content.length);
+		byte[] hash = new byte[Blake2b256.DIGEST_LENGTH];
+		new Blake2b256().digest(addressBytes, 0, 1 + content.length, hash, 0);
+		System.arraycopy(hash, 0, addressBytes, 1 + content.length, CHECKSUM_LENGTH);
+		return new Base58().encode(addressBytes);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the address is not valid Base58, or the prefix, length or checksum is invalid
+	 */
+	public static byte[] decode(String address) {
+		byte[] addressBytes = new Base58().decode(address);
+		verify(addressBytes, new Blake2b256(), new byte[Blake2b256.DIGEST_LENGTH]);
+		return addressBytes;
+	}
+
+	/**
+	 * Encodes many addresses at once, reusing the buffers between them.
+	 * @see #encode(byte[])
+	 */
+	public static String[] encodeAll(byte[][] addressBytes) {
+		Base58 base58 = new Base58();
+		Blake2b256 blake2b = new Blake2b256();
+		byte[] hash = new byte[Blake2b256.DIGEST_LENGTH];
+		String[] addresses = new String[addressBytes.length];
+		for (int i = 0; i < addressBytes.length; i++) {
+			verify(addressBytes[i], blake2b, hash);
+			addresses[i] = base58.encode(addressBytes[i]);
+		}
+		return addresses;
+	}
+
+	/**
+	 * Decodes many addresses at once, reusing the buffers between them.
+	 * @see #decode(String)
+	 */
+	public static byte[][] decodeAll(String[] addresses) {
+		Base58 base58 = new Base58();
+		Blake2b256 blake2b = new Blake2b256();
+		byte[] hash = new byte[Blake2b256.DIGEST_LENGTH];
+		byte[][] addressBytes = new byte[addresses.length][];
+		for (int i = 0; i < addresses.length; i++) {
+			addressBytes[i] = base58.decode(addresses[i]);
+			verify(addressBytes[i], blake2b, hash);
+		}
+		return addressBytes;
+	}
+
+	public static ErgoNetworkType getNetworkType(byte[] addressBytes) {
+		return ErgoNetworkType.fromId(prefix(addressBytes) & 0xF0);
+	}
+
+	public static Type getType(byte[] addressBytes) {
+		int id = prefix(addressBytes) & 0x0F;
+		for (Type type : Type.values()) {
+			if (type.id == id) return type;
+		}
+		throw new IllegalArgumentException("Unknown address type 0x" + Integer.toHexString(id));
+	}
+
+	/** The address without the prefix and checksum */
+	public static byte[] getContent(byte[] addressBytes) {
+		prefix(addressBytes);
+		return Arrays.copyOfRange(addressBytes, 1, addressBytes.length - CHECKSUM_LENGTH);
+	}
+
+	private static int prefix(byte[] addressBytes) {
+		if (addressBytes.length <= 1 + CHECKSUM_LENGTH)
+			throw new IllegalArgumentException("Address too short");
+		return addressBytes[0] & 0xFF;
+	}
+
+	private static void verify(byte[] addressBytes, Blake2b256 blake2b, byte[] hash) {
+		getNetworkType(addressBytes);
+		if (getType(addressBytes) == Type.P2PK && addressBytes.length != 1 + P2PK_CONTENT_LENGTH + CHECKSUM_LENGTH)
+			throw new IllegalArgumentException("Invalid P2PK address length " + addressBytes.length);
+		int contentEnd = addressBytes.length - CHECKSUM_LENGTH;
+		blake2b.digest(addressBytes, 0, contentEnd, hash, 0);
+		if (!Arrays.equals(hash, 0, CHECKSUM_LENGTH, addressBytes, contentEnd, addressBytes.length))
+			throw new IllegalArgumentException("Invalid address checksum");
+	}
+}
@@ -0,0 +1,194 @@
+package com.satergo.jledger.protocol.ergo;
+
+import com.satergo.jledger.APDUCommand;
+import com.satergo.jledger.APDUResponse;
+import com.satergo.jledger.AppSwitch;
+import com.satergo.jledger.DeviceScheduler;
+import com.satergo.jledger.LedgerDevice;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Attaches the same auth token to the commands that accept one, so that the app only asks the user for permission
+ * the first time. The token is generated with {@link SecureRandom} and replaced with a new one when the device
+ * is opened or closed, when the app is switched, and when {@link #rotate()} is called.
+ * <p>
+ * The device must be opened, closed and used through {@link #getDevice()} or {@link #getProtocol()},
+ * otherwise the session does not notice when the token has to be replaced.
+ * <p>
+ * A call is counted as a hit when its token was already used successfully, so the app is not expected to ask
+ * the user again, and as a miss otherwise. Displaying an address always asks the user, so it is always a miss
+ * and does not make the token count as used.
+ */
+public final class ErgoAuthSession {
+
+	private final SecureRandom random;
+	private final LedgerDevice device;
+	private final ErgoProtocol protocol;
+
+	private int token;
+	/** Whether a command with the current token has succeeded */
+	private boolean accepted;
+	private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), rotations = new AtomicLong();
+
+	public ErgoAuthSession(LedgerDevice device) {
+		this(device, new SecureRandom());
+	}
+
+	public ErgoAuthSession(LedgerDevice device, SecureRandom random) {
+		this.random = random;
+		this.device = new TrackingDevice(device);
+		this.protocol = new ErgoProtocol(this.device);
+		this.token = newToken();
+	}
+
+	/** The device to open, close and exchange commands with */
+	public LedgerDevice getDevice() {
+		return device;
+	}
+
+	/** The protocol for the commands that do not take an auth token */
+	public ErgoProtocol getProtocol() {
+		return protocol;
+	}
+
+	private int newToken() {
+		int token;
+		do {
+			token = random.nextInt();
+		} while (token == 0);
+		return token;
+	}
+
+	/** Replaces the token, the next command that uses it will require the permission of the user again */
+	public synchronized void rotate() {
+		token = newToken();
+		accepted = false;
+		rotations.incrementAndGet();
+	}
+
+	private int takeToken() {
+		return takeToken(false);
+	}
+
+	/** @param prompts whether the app asks the user even with an accepted token */
+	private synchronized int takeToken(boolean prompts) {
+		(accepted && !prompts ? hits : misses).incrementAndGet();
+		return token;
+	}
+
+	private synchronized void accept(int usedToken) {
+		if (usedToken == token)
+			accepted = true;
+	}
+
+	/**
+	 * @see ErgoProtocol#getExtendedPublicKey(int[], Integer)
+	 */
+	public ErgoResponse.ExtendedPublicKey getExtendedPublicKey(int[] bip44Path) throws ErgoLedgerException {
+		int token = takeToken();
+		ErgoResponse.ExtendedPublicKey result = protocol.getExtendedPublicKey(bip44Path, token);
+		accept(token);
+		return result;
+	}
+
+	/**
+	 * @see ErgoProtocol#deriveAddress(ErgoProtocol.DerivationAction, ErgoNetworkType, int[], Integer)
+	 */
+	public byte[] deriveAddress(ErgoProtocol.DerivationAction action, ErgoNetworkType networkType, int[] bip44Path) throws ErgoLedgerException {
+		boolean display = action == ErgoProtocol.DerivationAction.DISPLAY;
+		int token = takeToken(display);
+		byte[] result = protocol.deriveAddress(action, networkType, bip44Path, token);
+		if (!display)
+			accept(token);
+		return result;
+	}
+
+	/**
+	 * @see ErgoProtocol#attestBoxStart(byte[], int, long, int, int, int, int, Integer)
+	 */
+	public int attestBoxStart(byte[] transactionId, int boxIndex, long boxValue, int ergoTreeSize, int creationHeight, int tokenCount, int additionalRegistersSizeBytes) throws ErgoLedgerException {
+		int token = takeToken();
+		int result = protocol.attestBoxStart(transactionId, boxIndex, boxValue, ergoTreeSize, creationHeight, tokenCount, additionalRegistersSizeBytes, token);
+		accept(token);
+		return result;
+	}
+
+	/**
+	 * @see ErgoProtocol#startP2PKSigning(ErgoNetworkType, int[], Integer)
+	 */
+	public int startP2PKSigning(ErgoNetworkType networkType, int[] bip44Path) throws ErgoLedgerException {
+		int token = takeToken();
+		int result = protocol.startP2PKSigning(networkType, bip44Path, token);
+		accept(token);
+		return result;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/** @return hits / (hits + misses), or 0 if there have been no calls */
+	public double getHitRate() {
+		long hits = this.hits.get(), total = hits + misses.get();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/** How many times the token has been replaced */
+	public long getRotationCount() {
+		return rotations.get();
+	}
+
+	private final class TrackingDevice implements LedgerDevice {
+		private final LedgerDevice device;
+
+		TrackingDevice(LedgerDevice device) {
+			this.device = device;
+		}
+
+		@Override public int getProductId() { return device.getProductId(); }
+		@Override public DeviceScheduler getScheduler() { return device.getScheduler(); }
+
+		@Override
+		public void open() {
+			rotate();
+			device.open();
+		}
+
+		@Override
+		public void close() {
+			rotate();
+			device.close();
+		}
+
+		@Override
+		public void writeAPDU(APDUCommand apdu) {
+			if (AppSwitch.isAppSwitch(apdu))
+				rotate();
+			device.writeAPDU(apdu);
+		}
+
+		@Override
+		public APDUResponse readAPDU() {
+			return check(device.readAPDU());
+		}
+
+		@Override
+		public APDUResponse exchange(APDUCommand apdu) {
+			if (AppSwitch.isAppSwitch(apdu))
+				rotate();
+			return check(device.exchange(apdu));
+		}
+
+		private APDUResponse check(APDUResponse response) {
+			if (AppSwitch.isFromOtherApp(response))
+				rotate();
+			return response;
+		}
+	}
+}
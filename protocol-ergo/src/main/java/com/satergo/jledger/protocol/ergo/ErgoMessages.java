@@ -0,0 +1,46 @@
+package com.satergo.jledger.protocol.ergo;
+
+import com.satergo.jledger.codec.APDUCodec;
+import com.satergo.jledger.codec.CountPrefixed;
+import com.satergo.jledger.codec.Length;
+import com.satergo.jledger.codec.U16;
+import com.satergo.jledger.codec.U8;
+import org.jspecify.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * The data of the commands and responses that have no public record, their codecs are generated.
+ */
+final class ErgoMessages {
+	private ErgoMessages() {}
+
+	@APDUCodec
+	record Path(int[] bip44Path, @Nullable Integer authToken) {}
+
+	@APDUCodec
+	record NetworkPath(byte networkType, int[] bip44Path, @Nullable Integer authToken) {}
+
+	@APDUCodec
+	record AttestBoxStart(@Length(32) byte[] transactionId, @U16 int boxIndex, long boxValue, int ergoTreeSize,
+						  int creationHeight, @U8 int tokenCount, int additionalRegistersSizeBytes, @Nullable Integer authToken) {}
+
+	@APDUCodec
+	record Tokens(List<ErgoProtocol.TokenValue> tokens) {}
+
+	@APDUCodec
+	record AttestedBoxFrameData(@Length(32) byte[] boxId, @U8 int frameCount, @U8 int frameIndex, long value,
+								@CountPrefixed List<ErgoProtocol.TokenValue> tokens, @Length(16) byte[] attestation) {}
+
+	@APDUCodec
+	record TransactionStart(@U16 int inputs, @U16 int dataInputs, @U8 int distinctTokenIds, @U16 int outputs) {}
+
+	@APDUCodec
+	record Ids(@Length(32) List<byte[]> ids) {}
+
+	@APDUCodec
+	record OutputBoxStart(long boxValue, int ergoTreeSizeBytes, int creationHeight, @U8 int tokenCount, int additionalRegistersSizeBytes) {}
+
+	@APDUCodec
+	record OutputTokens(List<ErgoProtocol.TokenIndexValue> tokens) {}
+}
@@ -9,4 +9,11 @@ public enum ErgoNetworkType {
 	ErgoNetworkType(byte id) {
 		this.id = id;
 	}
+
+	static ErgoNetworkType fromId(int id) {
+		for (ErgoNetworkType type : values()) {
+			if (type.id == id) return type;
+		}
+		throw new IllegalArgumentException("Unknown network type 0x" + Integer.toHexString(id));
+	}
 }
@@ -1,6 +1,8 @@
 package com.satergo.jledger.protocol.ergo;
 
 import com.satergo.jledger.*;
+import com.satergo.jledger.codec.APDUCodec;
+import com.satergo.jledger.codec.Length;
 import org.jspecify.annotations.Nullable;
 
 import java.nio.ByteBuffer;
@@ -24,28 +26,81 @@ public final class ErgoProtocol extends AppProtocol {
 		super(device);
 	}
 
-	public record TokenId(byte[] bytes) {
+	/**
+	 * A token ID. It keeps its own copy of the 32 bytes and caches their hash code.
+	 * @see TokenIdPool
+	 */
+	public static final class TokenId {
+		private final byte[] bytes;
+		private final int hash;
+		/** The pool in which this is the canonical instance */
+		volatile @Nullable TokenIdPool pool;
+
 		public TokenId(byte[] bytes) {
 			Expect.length(bytes, 32);
 			this.bytes = bytes.clone();
+			this.hash = Arrays.hashCode(this.bytes);
+		}
+
+		/** Copies the 32 bytes at the offset */
+		TokenId(byte[] in, int offset) {
+			this.bytes = Arrays.copyOfRange(in, offset, offset + 32);
+			this.hash = Arrays.hashCode(this.bytes);
+		}
+
+		/** @return a copy of the bytes */
+		public byte[] bytes() {
+			return bytes.clone();
+		}
+
+		/** The array itself, which must not be modified */
+		byte[] array() {
+			return bytes;
 		}
-		@Override public boolean equals(Object o) { return o instanceof TokenId t && Arrays.equals(bytes, t.bytes); }
-		@Override public int hashCode() { return Arrays.hashCode(bytes); }
+
+		/** Equal to {@link Arrays#hashCode(byte[])} of the 32 bytes at the offset */
+		static int hash(byte[] in, int offset) {
+			int hash = 1;
+			for (int i = offset; i < offset + 32; i++)
+				hash = 31 * hash + in[i];
+			return hash;
+		}
+
+		@Override public boolean equals(Object o) { return o instanceof TokenId t && hash == t.hash && Arrays.equals(bytes, t.bytes); }
+		@Override public int hashCode() { return hash; }
+		@Override public String toString() { return "TokenId[" + HexFormat.of().formatHex(bytes) + "]"; }
 	}
+	/**
+	 * Decoded token values hold the canonical ID from {@link TokenIdPool#shared()}. The constructors keep the given ID,
+	 * so intern it with {@link TokenIdPool#intern} first to share it.
+	 */
+	@APDUCodec
 	public record TokenValue(TokenId id, long value) {
 		public TokenValue(byte[] id, long value) {
 			this(new TokenId(id), value);
 		}
 	}
+	@APDUCodec
 	public record TokenIndexValue(int tokenIndex, long value) {}
 
+	/**
+	 * Whether the response to the command can be reused for an identical command while the app stays open.
+	 * These are the version, app name, extended public key and address commands, except for displaying an address.
+	 * @see CachingLedgerDevice
+	 */
+	public static boolean isIdempotent(APDUCommand command) {
+		if (command.getCLA() != CLA) return false;
+		return switch (command.getINS()) {
+			case 0x01, 0x02, 0x10 -> true;
+			case 0x11 -> command.getP1() == DerivationAction.RETURN.code;
+			default -> false;
+		};
+	}
+
 	public ErgoResponse.Version getAppVersion() {
-		APDUResponse apdu = checkError(device.exchange(new APDUCommand(CLA, 0x01, 0x00, 0x00, true)));
-		return new ErgoResponse.Version(
-				apdu.getDataByte(0) & 0xFF,
-				apdu.getDataByte(1) & 0xFF,
-				apdu.getDataByte(2) & 0xFF,
-				apdu.getDataByte(3) == 0x01);
+		byte[] data = checkError(device.exchange(new APDUCommand(CLA, 0x01, 0x00, 0x00, true))).getData();
+		// Data after the version is ignored
+		return decodeResponse(() -> VersionCodec.decode(data, 0, Math.min(data.length, VersionCodec.FIXED_SIZE)));
 	}
 
 	/** Must return "Ergo" */
@@ -59,12 +114,11 @@ public final class ErgoProtocol extends AppProtocol {
 	 */
 	public ErgoResponse.ExtendedPublicKey getExtendedPublicKey(int[] bip44Path, @Nullable Integer optionalAuthToken) throws ErgoLedgerException {
 		if (bip44Path.length < 2 || bip44Path.length > 10) throw new IllegalArgumentException("2-10 inc.");
-		ByteBuffer buffer = ByteBuffer.allocate(bip44PathLength(bip44Path) + optTokenLength(optionalAuthToken));
-		putBip44Path(buffer, bip44Path);
-		putOptToken(buffer, optionalAuthToken);
-		APDUCommand apduCommand = new APDUCommand(CLA, 0x10, optionalAuthToken != null ? 0x02 : 0x01, 0x00, buffer.array());
-		APDUResponse apduResponse = checkError(device.exchange(apduCommand));
-		return new ErgoResponse.ExtendedPublicKey(apduResponse.getDataRange(0, 33), apduResponse.getDataRange(33, 65));
+		byte[] data = PathCodec.encode(new ErgoMessages.Path(bip44Path, optionalAuthToken));
+		APDUCommand apduCommand = new APDUCommand(CLA, 0x10, optionalAuthToken != null ? 0x02 : 0x01, 0x00, data);
+		byte[] response = checkError(device.exchange(apduCommand)).getData();
+		// Data after the key is ignored
+		return decodeResponse(() -> ExtendedPublicKeyCodec.decode(response, 0, Math.min(response.length, ExtendedPublicKeyCodec.FIXED_SIZE)));
 	}
 
 	public enum DerivationAction {
@@ -83,11 +137,8 @@ public final class ErgoProtocol extends AppProtocol {
 			DerivationAction action,
 			ErgoNetworkType networkType, int[] bip44Path, @Nullable Integer optionalAuthToken) throws ErgoLedgerException {
 		if (bip44Path.length < 5 || bip44Path.length > 10) throw new IllegalArgumentException("5-10 inc.");
-		ByteBuffer buffer = ByteBuffer.allocate(1 + bip44PathLength(bip44Path) + optTokenLength(optionalAuthToken));
-		buffer.put(networkType.id);
-		putBip44Path(buffer, bip44Path);
-		putOptToken(buffer, optionalAuthToken);
-		APDUCommand command = new APDUCommand(CLA, 0x11, action.code, optionalAuthToken != null ? 0x02 : 0x01, buffer.array());
+		byte[] data = NetworkPathCodec.encode(new ErgoMessages.NetworkPath(networkType.id, bip44Path, optionalAuthToken));
+		APDUCommand command = new APDUCommand(CLA, 0x11, action.code, optionalAuthToken != null ? 0x02 : 0x01, data);
 		return checkError(device.exchange(command)).getData();
 	}
 
@@ -99,19 +150,9 @@ public final class ErgoProtocol extends AppProtocol {
 	 * @return Random session ID
 	 */
 	public int attestBoxStart(byte[] transactionId, int boxIndex, long boxValue, int ergoTreeSize, int creationHeight, int tokenCount, int additionalRegistersSizeBytes, @Nullable Integer optionalAuthToken) throws ErgoLedgerException {
-		Expect.length(transactionId, 32);
-		Expect.ushort(boxIndex);
-		Expect.ubyte(tokenCount);
-		ByteBuffer buffer = ByteBuffer.allocate(optionalAuthToken == null ? 55 : 59);
-		buffer.put(transactionId)
-				.putShort((short) boxIndex)
-				.putLong(boxValue)
-				.putInt(ergoTreeSize)
-				.putInt(creationHeight)
-				.put((byte) tokenCount)
-				.putInt(additionalRegistersSizeBytes);
-		putOptToken(buffer, optionalAuthToken);
-		APDUCommand command = new APDUCommand(CLA, 0x20, 0x01, optionalAuthToken != null ? 0x02 : 0x01, buffer.array());
+		byte[] data = AttestBoxStartCodec.encode(new ErgoMessages.AttestBoxStart(transactionId, boxIndex, boxValue,
+				ergoTreeSize, creationHeight, tokenCount, additionalRegistersSizeBytes, optionalAuthToken));
+		APDUCommand command = new APDUCommand(CLA, 0x20, 0x01, optionalAuthToken != null ? 0x02 : 0x01, data);
 		byte dataByte = checkError(device.exchange(command)).getDataByte(0);
 		return dataByte & 0xFF;
 	}
@@ -127,12 +168,7 @@ public final class ErgoProtocol extends AppProtocol {
 
 	public Optional<Integer> attestAddTokens(int sessionId, List<TokenValue> tokens) throws ErgoLedgerException {
 		if (tokens.size() > 6) throw new IllegalArgumentException("max 6 tokens");
-		ByteBuffer buffer = ByteBuffer.allocate(tokens.size() * 40);
-		for (TokenValue token : tokens) {
-			buffer.put(token.id.bytes);
-			buffer.putLong(token.value);
-		}
-		APDUCommand command = new APDUCommand(CLA, 0x20, 0x03, sessionId, buffer.array());
+		APDUCommand command = new APDUCommand(CLA, 0x20, 0x03, sessionId, TokensCodec.encode(new ErgoMessages.Tokens(tokens)));
 		return emptyOrOneUnsignedByte(device.exchange(command));
 	}
 
@@ -148,24 +184,9 @@ public final class ErgoProtocol extends AppProtocol {
 	public ErgoResponse.AttestedBoxFrame getAttestedBoxFrame(int sessionId, int frameId) throws ErgoLedgerException {
 		Expect.ubyte(frameId);
 		APDUResponse response = checkError(device.exchange(new APDUCommand(CLA, 0x20, 0x05, sessionId, new byte[] { (byte) frameId })));
-		ByteBuffer buffer = ByteBuffer.wrap(response.getData());
-		byte[] boxId = new byte[32];
-		buffer.get(boxId);
-		int frameCount = buffer.get() & 0xFF;
-		int frameIndex = buffer.get() & 0xFF;
-		long amount = buffer.getLong();
-		int tokenCount = buffer.get() & 0xFF;
-		ArrayList<TokenValue> tokens = new ArrayList<>();
-		for (int i = 0; i < tokenCount; i++) {
-			byte[] tokenId = new byte[32];
-			buffer.get(tokenId);
-			tokens.add(new TokenValue(new TokenId(tokenId), buffer.getLong()));
-		}
-		byte[] attestation = new byte[16];
-		buffer.get(attestation);
-		if (buffer.position() != buffer.capacity())
-			throw new IllegalStateException("Unread data");
-		return new ErgoResponse.AttestedBoxFrame(boxId, frameCount, frameIndex, amount, Collections.unmodifiableList(tokens), attestation, response.getData());
+		byte[] rawData = response.getData();
+		ErgoMessages.AttestedBoxFrameData frame = decodeResponse(() -> AttestedBoxFrameDataCodec.decode(rawData));
+		return new ErgoResponse.AttestedBoxFrame(frame.boxId(), frame.frameCount(), frame.frameIndex(), frame.value(), frame.tokens(), frame.attestation(), rawData);
 	}
 
 	// SIGN TRANSACTION (0x21)
@@ -177,11 +198,8 @@ public final class ErgoProtocol extends AppProtocol {
 	public int startP2PKSigning(ErgoNetworkType networkType, int[] bip44Path, @Nullable Integer optionalAuthToken) throws ErgoLedgerException {
 		Objects.requireNonNull(networkType, "networkType");
 		if (bip44Path.length < 5 || bip44Path.length > 10) throw new IllegalArgumentException("5-10 inc.");
-		ByteBuffer buffer = ByteBuffer.allocate(1 + bip44PathLength(bip44Path) + optTokenLength(optionalAuthToken));
-		buffer.put(networkType.id);
-		putBip44Path(buffer, bip44Path);
-		putOptToken(buffer, optionalAuthToken);
-		APDUCommand command = new APDUCommand(CLA, 0x21, 0x01, optionalAuthToken != null ? 0x02 : 0x01, buffer.array());
+		byte[] data = NetworkPathCodec.encode(new ErgoMessages.NetworkPath(networkType.id, bip44Path, optionalAuthToken));
+		APDUCommand command = new APDUCommand(CLA, 0x21, 0x01, optionalAuthToken != null ? 0x02 : 0x01, data);
 		return checkError(device.exchange(command)).getDataByte(0);
 	}
 
@@ -193,26 +211,13 @@ public final class ErgoProtocol extends AppProtocol {
 	 * @param txOutputs unsigned short
 	 */
 	public void startTransaction(int sessionId, int txInputs, int txDataInputs, int txDistinctTokenIds, int txOutputs) throws ErgoLedgerException {
-		Expect.ushort(txInputs);
-		Expect.ushort(txDataInputs);
-		Expect.ushort(txDistinctTokenIds);
-		Expect.ushort(txOutputs);
-		ByteBuffer buffer = ByteBuffer.allocate(2 + 2 + 1 + 2)
-				.putShort((short) txInputs)
-				.putShort((short) txDataInputs)
-				.put((byte) txDistinctTokenIds)
-				.putShort((short) txOutputs);
-		checkError(device.exchange(new APDUCommand(CLA, 0x21, 0x10, sessionId, buffer.array())));
+		byte[] data = TransactionStartCodec.encode(new ErgoMessages.TransactionStart(txInputs, txDataInputs, txDistinctTokenIds, txOutputs));
+		checkError(device.exchange(new APDUCommand(CLA, 0x21, 0x10, sessionId, data)));
 	}
 
 	public void addTokenIds(int sessionId, List<byte[]> tokenIds) throws ErgoLedgerException {
 		if (tokenIds.size() > 7) throw new IllegalArgumentException("max 7 token ids");
-		ByteBuffer buffer = ByteBuffer.allocate(tokenIds.size() * 32);
-		for (byte[] tokenId : tokenIds) {
-			Expect.length(tokenId, 32);
-			buffer.put(tokenId);
-		}
-		checkError(device.exchange(new APDUCommand(CLA, 0x21, 0x11, sessionId, buffer.array())));
+		checkError(device.exchange(new APDUCommand(CLA, 0x21, 0x11, sessionId, IdsCodec.encode(new ErgoMessages.Ids(tokenIds)))));
 	}
 
 	public void addInputBoxFrame(int sessionId, ErgoResponse.AttestedBoxFrame attestedBoxFrame, int contentExtensionLength) throws ErgoLedgerException {
@@ -234,25 +239,15 @@ public final class ErgoProtocol extends AppProtocol {
 
 	public void addDataInputs(int sessionId, List<byte[]> boxIds) throws ErgoLedgerException {
 		if (boxIds.size() > 7) throw new IllegalArgumentException("max 7 boxIds");
-		ByteBuffer buffer = ByteBuffer.allocate(boxIds.size() * 32);
-		for (byte[] boxId : boxIds) {
-			Expect.length(boxId, 32);
-			buffer.put(boxId);
-		}
-		checkError(device.exchange(new APDUCommand(CLA, 0x21, 0x14, sessionId, buffer.array())));
+		checkError(device.exchange(new APDUCommand(CLA, 0x21, 0x14, sessionId, IdsCodec.encode(new ErgoMessages.Ids(boxIds)))));
 	}
 
 	/**
 	 * @param tokenCount unsigned byte
 	 */
 	public void addOutputBoxStart(int sessionId, long boxValue, int ergoTreeSizeBytes, int creationHeight, int tokenCount, int additionalRegistersSizeBytes) throws ErgoLedgerException {
-		Expect.ubyte(tokenCount);
-		checkError(device.exchange(new APDUCommand(CLA, 0x21, 0x15, sessionId, ByteBuffer.allocate(21)
-				.putLong(boxValue)
-				.putInt(ergoTreeSizeBytes)
-				.putInt(creationHeight)
-				.put((byte) tokenCount)
-				.putInt(additionalRegistersSizeBytes).array())));
+		byte[] data = OutputBoxStartCodec.encode(new ErgoMessages.OutputBoxStart(boxValue, ergoTreeSizeBytes, creationHeight, tokenCount, additionalRegistersSizeBytes));
+		checkError(device.exchange(new APDUCommand(CLA, 0x21, 0x15, sessionId, data)));
 	}
 
 	public void addOutputBoxErgoTreeChunk(int sessionId, byte[] bytes) throws ErgoLedgerException {
@@ -269,22 +264,15 @@ public final class ErgoProtocol extends AppProtocol {
 	 */
 	public void addOutputBoxChangeTree(int sessionId, int[] bip44Path) throws ErgoLedgerException {
 		if (bip44Path.length < 2 || bip44Path.length > 10) throw new IllegalArgumentException("2-10 inc.");
-		ByteBuffer buffer = ByteBuffer.allocate(bip44PathLength(bip44Path));
-		putBip44Path(buffer, bip44Path);
-		checkError(device.exchange(new APDUCommand(CLA, 0x21, 0x18, sessionId, buffer.array())));
+		byte[] data = PathCodec.encode(new ErgoMessages.Path(bip44Path, null));
+		checkError(device.exchange(new APDUCommand(CLA, 0x21, 0x18, sessionId, data)));
 	}
 
 	public void addOutputBoxTokens(int sessionId, List<TokenIndexValue> tokens) throws ErgoLedgerException {
-		int bufferSize = tokens.size() * 12;
-		if (bufferSize > 255) {
+		if (tokens.size() * TokenIndexValueCodec.FIXED_SIZE > 255) {
 			throw new IllegalArgumentException("Token limit exceeded");
 		}
-		ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
-		for (TokenIndexValue token : tokens) {
-			buffer.putInt(token.tokenIndex);
-			buffer.putLong(token.value);
-		}
-		checkError(device.exchange(new APDUCommand(CLA, 0x21, 0x19, sessionId, buffer.array())));
+		checkError(device.exchange(new APDUCommand(CLA, 0x21, 0x19, sessionId, OutputTokensCodec.encode(new ErgoMessages.OutputTokens(tokens)))));
 	}
 
 	public void addOutputBoxRegistersChunk(int sessionId, byte[] registersChunk) throws ErgoLedgerException {
@@ -1,6 +1,9 @@
 package com.satergo.jledger.protocol.ergo;
 
 import com.satergo.jledger.Expect;
+import com.satergo.jledger.codec.APDUCodec;
+import com.satergo.jledger.codec.Length;
+import com.satergo.jledger.codec.U8;
 
 import java.util.HexFormat;
 import java.util.List;
@@ -9,7 +12,8 @@ public class ErgoResponse {
 	private static final HexFormat HEX = HexFormat.of();
 	private ErgoResponse() {}
 
-	public record Version(int major, int minor, int patch, boolean debug) {}
+	@APDUCodec
+	public record Version(@U8 int major, @U8 int minor, @U8 int patch, boolean debug) {}
 
 	public record AttestedBoxFrame(byte[] boxId, int frameCount, int frameIndex, long value, List<ErgoProtocol.TokenValue> tokens, byte[] attestation, byte[] rawData) {
 		public AttestedBoxFrame {
@@ -28,7 +32,8 @@ public class ErgoResponse {
 		}
 	}
 
-	public record ExtendedPublicKey(byte[] compressedPublicKey, byte[] chainCode) {
+	@APDUCodec
+	public record ExtendedPublicKey(@Length(33) byte[] compressedPublicKey, @Length(32) byte[] chainCode) {
 		public ExtendedPublicKey {
 			Expect.length(compressedPublicKey, 33);
 			Expect.length(chainCode, 32);
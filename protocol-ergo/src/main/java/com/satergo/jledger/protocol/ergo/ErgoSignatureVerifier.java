@@ -0,0 +1,217 @@
+package com.satergo.jledger.protocol.ergo;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Verifies the Schnorr signatures returned by {@link ErgoProtocol#confirmAndSign}.
+ * <p>
+ * A signature is the 24-byte challenge {@code e} followed by the 32-byte response {@code z}. It is valid when
+ * {@code e} equals the first 24 bytes of the Blake2b-256 hash of the Fiat-Shamir bytes of the public key and
+ * the commitment {@code g^z * pk^-e}, followed by the message.
+ * <p>
+ * Public keys that are seen repeatedly get a precomputed table of their multiples, which makes verifying
+ * their signatures about twice as fast. At most {@code maxCachedKeys} tables are kept. This class is thread-safe.
+ */
+public final class ErgoSignatureVerifier {
+
+	public static final int SIGNATURE_LENGTH = 56;
+	static final int CHALLENGE_LENGTH = 24;
+	private static final int PUBLIC_KEY_LENGTH = 33;
+	/** Checks handled by one fork-join task without splitting further */
+	private static final int BATCH_GRANULARITY = 8;
+
+	/** ErgoTree header with constant segregation, one constant of type SigmaProp holding ProveDlog */
+	private static final byte[] TREE_PREFIX = { 0x10, 0x01, 0x08, (byte) 0xCD };
+	/** The root expression, a placeholder for constant 0 */
+	private static final byte[] TREE_SUFFIX = { 0x73, 0x00 };
+	private static final int TREE_LENGTH = TREE_PREFIX.length + PUBLIC_KEY_LENGTH + TREE_SUFFIX.length;
+
+	private static final class GeneratorTable {
+		static final Secp256k1.Table TABLE = new Secp256k1.Table(Secp256k1.G, 256);
+	}
+
+	public record SignatureCheck(byte[] message, byte[] publicKey, byte[] signature) {}
+
+	private record Key(byte[] bytes) {
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key k && Arrays.equals(bytes, k.bytes);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(bytes);
+		}
+	}
+
+	private final int maxCachedKeys, precomputeThreshold;
+	private final ConcurrentHashMap<Key, Secp256k1.Table> tables = new ConcurrentHashMap<>();
+
+	public ErgoSignatureVerifier() {
+		this(1024, 4);
+	}
+
+	/**
+	 * @param maxCachedKeys how many public key tables to keep
+	 * @param precomputeThreshold how many times a public key must appear in one {@link #verifyAll} call for a table to be created
+	 */
+	public ErgoSignatureVerifier(int maxCachedKeys, int precomputeThreshold) {
+		if (maxCachedKeys < 0) throw new IllegalArgumentException("maxCachedKeys < 0");
+		if (precomputeThreshold < 1) throw new IllegalArgumentException("precomputeThreshold < 1");
+		this.maxCachedKeys = maxCachedKeys;
+		this.precomputeThreshold = precomputeThreshold;
+	}
+
+	/**
+	 * @param publicKey the 33-byte compressed public key
+	 * @return false also if the public key or the signature is malformed
+	 */
+	public boolean verify(byte[] message, byte[] publicKey, byte[] signature) {
+		if (signature.length != SIGNATURE_LENGTH || publicKey.length != PUBLIC_KEY_LENGTH)
+			return false;
+		BigInteger e = new BigInteger(1, Arrays.copyOfRange(signature, 0, CHALLENGE_LENGTH));
+		BigInteger z = new BigInteger(1, Arrays.copyOfRange(signature, CHALLENGE_LENGTH, SIGNATURE_LENGTH));
+		Secp256k1.Point keyPart;
+		Secp256k1.Table table = tables.get(new Key(publicKey));
+		if (table != null) {
+			keyPart = table.multiplyAdd(e, Secp256k1.Point.INFINITY);
+		} else {
+			Secp256k1.Point point;
+			try {
+				point = Secp256k1.decompress(publicKey);
+			} catch (IllegalArgumentException ex) {
+				return false;
+			}
+			keyPart = Secp256k1.multiply(point.negate(), e);
+		}
+		Secp256k1.Point commitment = GeneratorTable.TABLE.multiplyAdd(z, keyPart);
+		if (commitment.isInfinity())
+			return false;
+		byte[] expected = challenge(publicKey, Secp256k1.compress(commitment), message);
+		return Arrays.equals(expected, 0, CHALLENGE_LENGTH, signature, 0, CHALLENGE_LENGTH);
+	}
+
+	/**
+	 * Verifies the signatures in parallel in the common fork-join pool.
+	 * @see #verifyAll(List, ForkJoinPool)
+	 */
+	public boolean[] verifyAll(List<SignatureCheck> checks) {
+		return verifyAll(checks, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Verifies the signatures in parallel. Tables are first created for the public keys that appear at least
+	 * {@code precomputeThreshold} times.
+	 * @return whether each signature is valid, in the same order as the checks
+	 */
+	public boolean[] verifyAll(List<SignatureCheck> checks, ForkJoinPool pool) {
+		SignatureCheck[] array = checks.toArray(new SignatureCheck[0]);
+		Map<Key, Integer> counts = new HashMap<>();
+		for (SignatureCheck check : array)
+			counts.merge(new Key(check.publicKey()), 1, Integer::sum);
+		byte[][] repeated = counts.entrySet().stream()
+				.filter(entry -> entry.getValue() >= precomputeThreshold && !tables.containsKey(entry.getKey()))
+				.map(entry -> entry.getKey().bytes())
+				.toArray(byte[][]::new);
+		boolean[] results = new boolean[array.length];
+		pool.invoke(new RecursiveAction() {
+			@Override
+			protected void compute() {
+				invokeAll(Arrays.stream(repeated).map(publicKey -> new RecursiveAction() {
+					@Override
+					protected void compute() {
+						try {
+							precompute(publicKey);
+						} catch (IllegalArgumentException ignored) {
+							// verify will report it as invalid
+						}
+					}
+				}).toList());
+				invokeAll(new Batch(array, results, 0, array.length));
+			}
+		});
+		return results;
+	}
+
+	private final class Batch extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final SignatureCheck[] checks;
+		private final boolean[] results;
+		private final int from, to;
+
+		Batch(SignatureCheck[] checks, boolean[] results, int from, int to) {
+			this.checks = checks;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= BATCH_GRANULARITY) {
+				for (int i = from; i < to; i++) {
+					SignatureCheck check = checks[i];
+					results[i] = verify(check.message(), check.publicKey(), check.signature());
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new Batch(checks, results, from, middle), new Batch(checks, results, middle, to));
+			}
+		}
+	}
+
+	/**
+	 * Creates the table for the public key if it does not exist, evicting another one if there are too many.
+	 * @throws IllegalArgumentException if the public key is not a valid compressed point
+	 */
+	public void precompute(byte[] publicKey) {
+		if (maxCachedKeys == 0) return;
+		Key key = new Key(publicKey.clone());
+		if (tables.containsKey(key)) return;
+		Secp256k1.Table table = new Secp256k1.Table(Secp256k1.decompress(publicKey).negate(), CHALLENGE_LENGTH * 8);
+		Iterator<Key> iterator = tables.keySet().iterator();
+		while (tables.size() >= maxCachedKeys && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+		}
+		tables.putIfAbsent(key, table);
+	}
+
+	public int getCachedKeyCount() {
+		return tables.size();
+	}
+
+	public void clearCache() {
+		tables.clear();
+	}
+
+	/** The Fiat-Shamir challenge, of which the first {@link #CHALLENGE_LENGTH} bytes are used */
+	static byte[] challenge(byte[] publicKey, byte[] commitment, byte[] message) {
+		byte[] input = new byte[1 + 2 + TREE_LENGTH + 2 + commitment.length + message.length];
+		int p = 0;
+		input[p++] = 1; // leaf
+		input[p++] = (byte) (TREE_LENGTH >> 8);
+		input[p++] = (byte) TREE_LENGTH;
+		System.arraycopy(TREE_PREFIX, 0, input, p, TREE_PREFIX.length);
+		p += TREE_PREFIX.length;
+		System.arraycopy(publicKey, 0, input, p, PUBLIC_KEY_LENGTH);
+		p += PUBLIC_KEY_LENGTH;
+		System.arraycopy(TREE_SUFFIX, 0, input, p, TREE_SUFFIX.length);
+		p += TREE_SUFFIX.length;
+		input[p++] = (byte) (commitment.length >> 8);
+		input[p++] = (byte) commitment.length;
+		System.arraycopy(commitment, 0, input, p, commitment.length);
+		p += commitment.length;
+		System.arraycopy(message, 0, input, p, message.length);
+		return Blake2b256.digest(input);
+	}
+}
@@ -0,0 +1,318 @@
+package com.satergo.jledger.protocol.ergo;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * The secp256k1 group operations needed for verifying signatures. Points are in Jacobian coordinates.
+ * Field elements are 8 little-endian 32-bit limbs, reduced using {@code 2^256 = 2^32 + 977 (mod p)}.
+ */
+final class Secp256k1 {
+	private Secp256k1() {}
+
+	static final BigInteger P = new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEFFFFFC2F", 16);
+	static final BigInteger N = new BigInteger("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEBAAEDCE6AF48A03BBFD25E8CD0364141", 16);
+	private static final BigInteger SQRT_EXPONENT = P.add(BigInteger.ONE).shiftRight(2);
+	private static final long M = 0xFFFFFFFFL;
+	private static final int[] P_LIMBS = fromBigInteger(P);
+	private static final int[] ZERO = new int[8], ONE = { 1, 0, 0, 0, 0, 0, 0, 0 }, SEVEN = { 7, 0, 0, 0, 0, 0, 0, 0 };
+
+	static final Point G = new Point(
+			fromBigInteger(new BigInteger("79BE667EF9DCBBAC55A06295CE870B07029BFCDB2DCE28D959F2815B16F81798", 16)),
+			fromBigInteger(new BigInteger("483ADA7726A3C4655DA4FBFC0E1108A8FD17B448A68554199C47D08FFB10D4B8", 16)),
+			ONE);
+
+	/** A point in Jacobian coordinates, z is 0 for the point at infinity. The arrays are never modified. */
+	record Point(int[] x, int[] y, int[] z) {
+		static final Point INFINITY = new Point(ONE, ONE, ZERO);
+
+		boolean isInfinity() { return isZero(z); }
+
+		Point negate() { return isInfinity() ? this : new Point(x, sub(ZERO, y), z); }
+	}
+
+	private static int[] fromBigInteger(BigInteger value) {
+		int[] limbs = new int[8];
+		for (int i = 0; i < 8; i++)
+			limbs[i] = value.shiftRight(32 * i).intValue();
+		return limbs;
+	}
+
+	private static BigInteger toBigInteger(int[] a) {
+		byte[] bytes = new byte[32];
+		toBytes(a, bytes, 0);
+		return new BigInteger(1, bytes);
+	}
+
+	private static void toBytes(int[] a, byte[] out, int offset) {
+		for (int i = 0; i < 8; i++) {
+			int limb = a[7 - i];
+			out[offset + 4 * i] = (byte) (limb >>> 24);
+			out[offset + 4 * i + 1] = (byte) (limb >>> 16);
+			out[offset + 4 * i + 2] = (byte) (limb >>> 8);
+			out[offset + 4 * i + 3] = (byte) limb;
+		}
+	}
+
+	private static boolean isZero(int[] a) {
+		return (a[0] | a[1] | a[2] | a[3] | a[4] | a[5] | a[6] | a[7]) == 0;
+	}
+
+	private static boolean isOdd(int[] a) {
+		return (a[0] & 1) != 0;
+	}
+
+	private static boolean lessThanP(int[] a) {
+		for (int i = 7; i >= 0; i--) {
+			int c = Integer.compareUnsigned(a[i], P_LIMBS[i]);
+			if (c != 0) return c < 0;
+		}
+		return false;
+	}
+
+	/** @return the carry out of the top limb */
+	private static long addInPlace(int[] a, int[] b) {
+		long carry = 0;
+		for (int i = 0; i < 8; i++) {
+			long v = (a[i] & M) + (b[i] & M) + carry;
+			a[i] = (int) v;
+			carry = v >>> 32;
+		}
+		return carry;
+	}
+
+	private static void subtractP(int[] a) {
+		long borrow = 0;
+		for (int i = 0; i < 8; i++) {
+			long v = (a[i] & M) - (P_LIMBS[i] & M) - borrow;
+			a[i] = (int) v;
+			borrow = v >>> 63;
+		}
+	}
+
+	private static int[] add(int[] a, int[] b) {
+		int[] r = a.clone();
+		// a + b < 2p, so a carry means subtracting p once, which modulo 2^256 is the same as ignoring the carry
+		if (addInPlace(r, b) != 0 || !lessThanP(r))
+			subtractP(r);
+		return r;
+	}
+
+	private static int[] sub(int[] a, int[] b) {
+		int[] r = new int[8];
+		long borrow = 0;
+		for (int i = 0; i < 8; i++) {
+			long v = (a[i] & M) - (b[i] & M) - borrow;
+			r[i] = (int) v;
+			borrow = v >>> 63;
+		}
+		if (borrow != 0)
+			addInPlace(r, P_LIMBS);
+		return r;
+	}
+
+	private static int[] twice(int[] a) { return add(a, a); }
+
+	private static int[] mul(int[] a, int[] b) {
+		long[] t = new long[16];
+		for (int i = 0; i < 8; i++) {
+			long ai = a[i] & M;
+			for (int j = 0; j < 8; j++) {
+				long product = ai * (b[j] & M);
+				t[i + j] += product & M;
+				t[i + j + 1] += product >>> 32;
+			}
+		}
+		return reduce(t);
+	}
+
+	private static int[] sqr(int[] a) { return mul(a, a); }
+
+	/** Reduces the 512-bit product whose columns may exceed 32 bits */
+	private static int[] reduce(long[] t) {
+		for (int k = 0; k < 15; k++) {
+			t[k + 1] += t[k] >>> 32;
+			t[k] &= M;
+		}
+		int[] r = new int[8];
+		long carry = 0;
+		for (int k = 0; k < 8; k++) {
+			long v = t[k] + t[8 + k] * 977 + (k > 0 ? t[7 + k] : 0) + carry;
+			r[k] = (int) v;
+			carry = v >>> 32;
+		}
+		carry += t[15];
+		while (carry != 0) {
+			long overflow = carry;
+			long v = (r[0] & M) + overflow * 977;
+			r[0] = (int) v;
+			v = (r[1] & M) + overflow + (v >>> 32);
+			r[1] = (int) v;
+			carry = v >>> 32;
+			for (int k = 2; k < 8 && carry != 0; k++) {
+				v = (r[k] & M) + carry;
+				r[k] = (int) v;
+				carry = v >>> 32;
+			}
+		}
+		if (!lessThanP(r))
+			subtractP(r);
+		return r;
+	}
+
+	private static int[] invert(int[] a) {
+		return fromBigInteger(toBigInteger(a).modInverse(P));
+	}
+
+	static Point twice(Point p) {
+		if (p.isInfinity() || isZero(p.y)) return Point.INFINITY;
+		int[] a = sqr(p.x), b = sqr(p.y), c = sqr(b);
+		int[] d = twice(sub(sub(sqr(add(p.x, b)), a), c));
+		int[] e = add(twice(a), a), f = sqr(e);
+		int[] x3 = sub(f, twice(d));
+		int[] y3 = sub(mul(e, sub(d, x3)), twice(twice(twice(c))));
+		int[] z3 = twice(mul(p.y, p.z));
+		return new Point(x3, y3, z3);
+	}
+
+	/** Adds a point with z = 1 */
+	static Point addAffine(Point p, int[] x2, int[] y2) {
+		if (p.isInfinity()) return new Point(x2, y2, ONE);
+		int[] z1z1 = sqr(p.z);
+		int[] u2 = mul(x2, z1z1), s2 = mul(y2, mul(p.z, z1z1));
+		int[] h = sub(u2, p.x), r = twice(sub(s2, p.y));
+		if (isZero(h))
+			return isZero(r) ? twice(p) : Point.INFINITY;
+		int[] hh = sqr(h), i = twice(twice(hh)), j = mul(h, i), v = mul(p.x, i);
+		int[] x3 = sub(sub(sqr(r), j), twice(v));
+		int[] y3 = sub(mul(r, sub(v, x3)), twice(mul(p.y, j)));
+		int[] z3 = sub(sub(sqr(add(p.z, h)), z1z1), hh);
+		return new Point(x3, y3, z3);
+	}
+
+	static Point add(Point p, Point q) {
+		if (p.isInfinity()) return q;
+		if (q.isInfinity()) return p;
+		int[] z1z1 = sqr(p.z), z2z2 = sqr(q.z);
+		int[] u1 = mul(p.x, z2z2), u2 = mul(q.x, z1z1);
+		int[] s1 = mul(p.y, mul(q.z, z2z2)), s2 = mul(q.y, mul(p.z, z1z1));
+		int[] h = sub(u2, u1), r = twice(sub(s2, s1));
+		if (isZero(h))
+			return isZero(r) ? twice(p) : Point.INFINITY;
+		int[] i = sqr(twice(h)), j = mul(h, i), v = mul(u1, i);
+		int[] x3 = sub(sub(sqr(r), j), twice(v));
+		int[] y3 = sub(mul(r, sub(v, x3)), twice(mul(s1, j)));
+		int[] z3 = mul(sub(sub(sqr(add(p.z, q.z)), z1z1), z2z2), h);
+		return new Point(x3, y3, z3);
+	}
+
+	/** Multiplies by a non-negative scalar with a 4-bit window */
+	static Point multiply(Point p, BigInteger k) {
+		Point[] multiples = new Point[16];
+		multiples[1] = p;
+		for (int i = 2; i < 16; i++)
+			multiples[i] = add(multiples[i - 1], p);
+		Point result = Point.INFINITY;
+		for (int w = (k.bitLength() + 3) / 4 - 1; w >= 0; w--) {
+			result = twice(twice(twice(twice(result))));
+			int digit = nibble(k, w);
+			if (digit != 0)
+				result = add(result, multiples[digit]);
+		}
+		return result;
+	}
+
+	static int nibble(BigInteger k, int window) {
+		int bit = window * 4;
+		return (k.testBit(bit) ? 1 : 0) | (k.testBit(bit + 1) ? 2 : 0) | (k.testBit(bit + 2) ? 4 : 0) | (k.testBit(bit + 3) ? 8 : 0);
+	}
+
+	/**
+	 * Precomputed affine multiples {@code d * 16^w * base} for every 4-bit window {@code w} and digit {@code d},
+	 * so that multiplying only needs one addition per window and no doublings.
+	 */
+	static final class Table {
+		private final int[][] xs, ys;
+		private final int windows;
+
+		Table(Point base, int bits) {
+			windows = (bits + 3) / 4;
+			Point[] points = new Point[windows * 15];
+			Point windowBase = base;
+			for (int w = 0; w < windows; w++) {
+				Point multiple = windowBase;
+				for (int d = 0; d < 15; d++) {
+					points[w * 15 + d] = multiple;
+					multiple = add(multiple, windowBase);
+				}
+				// multiple is now 16 * windowBase
+				windowBase = multiple;
+			}
+			xs = new int[points.length][];
+			ys = new int[points.length][];
+			normalize(points, xs, ys);
+		}
+
+		/** Adds {@code k * base} to the point, k must not have more bits than the table was created for */
+		Point multiplyAdd(BigInteger k, Point to) {
+			if (k.bitLength() > windows * 4) throw new IllegalArgumentException("scalar too large");
+			Point result = to;
+			for (int w = 0; w < windows; w++) {
+				int digit = nibble(k, w);
+				if (digit != 0)
+					result = addAffine(result, xs[w * 15 + digit - 1], ys[w * 15 + digit - 1]);
+			}
+			return result;
+		}
+	}
+
+	/** Converts the points to affine coordinates with a single inversion */
+	private static void normalize(Point[] points, int[][] xs, int[][] ys) {
+		int[][] products = new int[points.length][];
+		int[] product = ONE;
+		for (int i = 0; i < points.length; i++) {
+			if (points[i].isInfinity()) throw new IllegalArgumentException("point at infinity");
+			products[i] = product;
+			product = mul(product, points[i].z);
+		}
+		int[] inverse = invert(product);
+		for (int i = points.length - 1; i >= 0; i--) {
+			int[] zInverse = mul(inverse, products[i]);
+			inverse = mul(inverse, points[i].z);
+			int[] zInverse2 = sqr(zInverse);
+			xs[i] = mul(points[i].x, zInverse2);
+			ys[i] = mul(points[i].y, mul(zInverse2, zInverse));
+		}
+	}
+
+	/**
+	 * @return the 33-byte compressed form
+	 * @throws IllegalArgumentException if it is the point at infinity
+	 */
+	static byte[] compress(Point p) {
+		if (p.isInfinity()) throw new IllegalArgumentException("point at infinity");
+		int[] zInverse = invert(p.z), zInverse2 = sqr(zInverse);
+		int[] x = mul(p.x, zInverse2), y = mul(p.y, mul(zInverse2, zInverse));
+		byte[] out = new byte[33];
+		out[0] = (byte) (isOdd(y) ? 0x03 : 0x02);
+		toBytes(x, out, 1);
+		return out;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the bytes are not a compressed point on the curve
+	 */
+	static Point decompress(byte[] bytes) {
+		if (bytes.length != 33 || (bytes[0] != 0x02 && bytes[0] != 0x03))
+			throw new IllegalArgumentException("Invalid compressed point");
+		BigInteger xValue = new BigInteger(1, Arrays.copyOfRange(bytes, 1, 33));
+		if (xValue.compareTo(P) >= 0) throw new IllegalArgumentException("Invalid compressed point");
+		int[] x = fromBigInteger(xValue);
+		int[] rhs = add(mul(sqr(x), x), SEVEN);
+		int[] y = fromBigInteger(toBigInteger(rhs).modPow(SQRT_EXPONENT, P));
+		if (!Arrays.equals(sqr(y), rhs)) throw new IllegalArgumentException("Point is not on the curve");
+		if (isOdd(y) != (bytes[0] == 0x03))
+			y = sub(ZERO, y);
+		return new Point(x, y, ONE);
+	}
+}
@@ -0,0 +1,38 @@
+package com.satergo.jledger.protocol.ergo;
+
+/**
+ * The codec of {@link ErgoProtocol.TokenId}, written by hand so that decoding returns the canonical instance from
+ * {@link TokenIdPool#shared()} without copying the bytes when there already is one.
+ */
+final class TokenIdCodec {
+	private TokenIdCodec() {}
+
+	static final int FIXED_SIZE = 32;
+
+	static int size(ErgoProtocol.TokenId value) {
+		return FIXED_SIZE;
+	}
+
+	static byte[] encode(ErgoProtocol.TokenId value) {
+		return value.bytes();
+	}
+
+	/** @return the offset after the written value */
+	static int write(ErgoProtocol.TokenId value, byte[] out, int p) {
+		System.arraycopy(value.array(), 0, out, p, FIXED_SIZE);
+		return p + FIXED_SIZE;
+	}
+
+	static ErgoProtocol.TokenId decode(byte[] in) {
+		return decode(in, 0, in.length);
+	}
+
+	/** @throws IllegalArgumentException if the data is too short or too long */
+	static ErgoProtocol.TokenId decode(byte[] in, int offset, int length) {
+		if (length < FIXED_SIZE)
+			throw new IllegalArgumentException("Not enough data");
+		if (length > FIXED_SIZE)
+			throw new IllegalArgumentException("Unread data");
+		return TokenIdPool.shared().intern(in, offset);
+	}
+}
@@ -0,0 +1,125 @@
+package com.satergo.jledger.protocol.ergo;
+
+import com.satergo.jledger.Expect;
+import org.jspecify.annotations.Nullable;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical {@link ErgoProtocol.TokenId} instances, so that a token held in many boxes is stored once.
+ * Instances are only weakly referenced and disappear from the pool when they are no longer used elsewhere.
+ * <p>
+ * Decoding a {@link ErgoProtocol.TokenValue}, including the tokens of parsed box frames, uses the
+ * {@linkplain #shared() shared pool}. This class is thread-safe.
+ */
+public final class TokenIdPool {
+
+	private static final TokenIdPool SHARED = new TokenIdPool();
+
+	public static TokenIdPool shared() {
+		return SHARED;
+	}
+
+	/**
+	 * The 32 bytes at the offset, with their hash code. The keys in the map have their own copy,
+	 * lookups use the array of the caller.
+	 */
+	private static final class Key {
+		final byte[] bytes;
+		final int offset, hash;
+
+		Key(byte[] bytes, int offset, int hash) {
+			this.bytes = bytes;
+			this.offset = offset;
+			this.hash = hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key k && hash == k.hash && Arrays.equals(bytes, offset, offset + 32, k.bytes, k.offset, k.offset + 32);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static final class Entry extends WeakReference<ErgoProtocol.TokenId> {
+		final Key key;
+
+		Entry(ErgoProtocol.TokenId id, Key key, ReferenceQueue<ErgoProtocol.TokenId> queue) {
+			super(id, queue);
+			this.key = key;
+		}
+	}
+
+	private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+	private final ReferenceQueue<ErgoProtocol.TokenId> queue = new ReferenceQueue<>();
+
+	/**
+	 * @return the canonical instance equal to {@code id}, which becomes the canonical one if there is none
+	 */
+	public ErgoProtocol.TokenId intern(ErgoProtocol.TokenId id) {
+		if (id.pool == this) return id;
+		return intern(id.array(), 0, id.hashCode(), id);
+	}
+
+	/**
+	 * Like {@link #intern(ErgoProtocol.TokenId)}, but only copies the bytes if there is no canonical instance yet.
+	 */
+	public ErgoProtocol.TokenId intern(byte[] bytes) {
+		Expect.length(bytes, 32);
+		return intern(bytes, 0);
+	}
+
+	/** Like {@link #intern(byte[])} for the 32 bytes at the offset */
+	ErgoProtocol.TokenId intern(byte[] in, int offset) {
+		Objects.checkFromIndexSize(offset, 32, in.length);
+		return intern(in, offset, ErgoProtocol.TokenId.hash(in, offset), null);
+	}
+
+	/**
+	 * @param candidate the instance to make canonical if there is none, or null to create one from the bytes
+	 */
+	private ErgoProtocol.TokenId intern(byte[] in, int offset, int hash, ErgoProtocol.@Nullable TokenId candidate) {
+		expunge();
+		Key lookup = new Key(in, offset, hash);
+		while (true) {
+			Entry entry = entries.get(lookup);
+			if (entry != null) {
+				ErgoProtocol.TokenId existing = entry.get();
+				if (existing != null) return existing;
+				// Collected but not expunged yet
+				entries.remove(entry.key, entry);
+				continue;
+			}
+			if (candidate == null)
+				candidate = new ErgoProtocol.TokenId(in, offset);
+			Key key = new Key(Arrays.copyOfRange(in, offset, offset + 32), 0, hash);
+			if (entries.putIfAbsent(key, new Entry(candidate, key, queue)) == null) {
+				if (candidate.pool == null)
+					candidate.pool = this;
+				return candidate;
+			}
+		}
+	}
+
+	/** The number of canonical instances, including ones that have been collected but not removed yet */
+	public int size() {
+		expunge();
+		return entries.size();
+	}
+
+	private void expunge() {
+		Object reference;
+		while ((reference = queue.poll()) != null) {
+			Entry entry = (Entry) reference;
+			entries.remove(entry.key, entry);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package com.satergo.jledger.protocol.ergo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The distinct token IDs of a transaction that is being signed, numbered in the order they were added.
+ * They are sent with {@link ErgoProtocol#addTokenIds} and the output tokens refer to them by index.
+ * The IDs are the canonical instances from a {@link TokenIdPool}. This class is not thread-safe.
+ */
+public final class TokenIndexTable {
+
+	private final TokenIdPool pool;
+	private final Map<ErgoProtocol.TokenId, Integer> indexes = new HashMap<>();
+	private final List<ErgoProtocol.TokenId> ids = new ArrayList<>();
+
+	public TokenIndexTable() {
+		this(TokenIdPool.shared());
+	}
+
+	public TokenIndexTable(TokenIdPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * @return the index of the token, which is added if it is not in the table
+	 * @throws IllegalStateException if the table already has 255 tokens
+	 */
+	public int add(ErgoProtocol.TokenId id) {
+		Integer index = indexes.get(id);
+		if (index != null) return index;
+		if (ids.size() == 255) throw new IllegalStateException("max 255 distinct tokens");
+		ErgoProtocol.TokenId canonical = pool.intern(id);
+		indexes.put(canonical, ids.size());
+		ids.add(canonical);
+		return ids.size() - 1;
+	}
+
+	/** @return the index of the token, or -1 if it is not in the table */
+	public int indexOf(ErgoProtocol.TokenId id) {
+		return indexes.getOrDefault(id, -1);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if the token is not in the table
+	 */
+	public ErgoProtocol.TokenIndexValue indexValue(ErgoProtocol.TokenId id, long value) {
+		int index = indexOf(id);
+		if (index < 0) throw new IllegalArgumentException("Token not in the table");
+		return new ErgoProtocol.TokenIndexValue(index, value);
+	}
+
+	public int size() {
+		return ids.size();
+	}
+
+	/** The IDs in index order */
+	public List<ErgoProtocol.TokenId> getIds() {
+		return Collections.unmodifiableList(ids);
+	}
+
+	/** The IDs in index order, as {@link ErgoProtocol#addTokenIds} takes them */
+	public List<byte[]> getIdBytes() {
+		return ids.stream().map(ErgoProtocol.TokenId::bytes).toList();
+	}
+}
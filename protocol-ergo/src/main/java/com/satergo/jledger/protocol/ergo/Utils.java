@@ -3,32 +3,12 @@ package com.satergo.jledger.protocol.ergo;
 import com.satergo.jledger.APDUResponse;
 import org.jspecify.annotations.Nullable;
 
-import java.nio.ByteBuffer;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 class Utils {
 	private Utils() {}
 
-	static int bip44PathLength(int[] bip44Path) {
-		return 1 + bip44Path.length * 4;
-	}
-
-	static void putBip44Path(ByteBuffer buffer, int[] path) {
-		buffer.put((byte) path.length);
-		for (int derivationIndex : path) {
-			buffer.putInt(derivationIndex);
-		}
-	}
-
-	static int optTokenLength(@Nullable Integer optionalAuthToken) {
-		return optionalAuthToken != null ? 4 : 0;
-	}
-
-	static void putOptToken(ByteBuffer buffer, @Nullable Integer optionalAuthToken) {
-		if (optionalAuthToken != null)
-			buffer.putInt(optionalAuthToken);
-	}
-
 	static APDUResponse checkError(APDUResponse response) throws ErgoLedgerException {
 		if (response.getSW() != ErgoProtocol.RESULT_OK) {
 			throw new ErgoLedgerException(response.getSW());
@@ -44,4 +24,16 @@ class Utils {
 			default -> throw new IllegalStateException("Received " + response.getNr() + " bytes (0 or 1 expected)");
 		};
 	}
+
+	/**
+	 * Runs a codec decoder on response data. Malformed responses are reported with an {@link IllegalStateException},
+	 * like the other unexpected responses.
+	 */
+	static <T> T decodeResponse(Supplier<T> decoder) {
+		try {
+			return decoder.get();
+		} catch (IllegalArgumentException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
 }
@@ -0,0 +1,68 @@
+package com.satergo.jledger.protocol.ergo;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Base58Test {
+
+	private static final HexFormat HEX = HexFormat.of();
+	private static final String ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+
+	/** The straightforward BigInteger conversion */
+	private static String reference(byte[] input) {
+		StringBuilder s = new StringBuilder();
+		BigInteger n = new BigInteger(1, input);
+		while (n.signum() > 0) {
+			BigInteger[] qr = n.divideAndRemainder(BigInteger.valueOf(58));
+			s.append(ALPHABET.charAt(qr[1].intValue()));
+			n = qr[0];
+		}
+		for (int i = 0; i < input.length && input[i] == 0; i++)
+			s.append('1');
+		return s.reverse().toString();
+	}
+
+	@Test
+	void leadingZeros() {
+		Base58 base58 = new Base58();
+		assertEquals("", base58.encode(new byte[0]));
+		assertEquals("1", base58.encode(new byte[1]));
+		assertEquals("11", base58.encode(new byte[2]));
+		assertEquals("115T", base58.encode(HEX.parseHex("00000102")));
+		assertEquals("1115Q", base58.encode(HEX.parseHex("000000ff")));
+		assertArrayEquals(new byte[0], base58.decode(""));
+		assertArrayEquals(new byte[2], base58.decode("11"));
+		assertArrayEquals(HEX.parseHex("00000102"), base58.decode("115T"));
+		assertArrayEquals(HEX.parseHex("000000ff"), base58.decode("1115Q"));
+	}
+
+	@Test
+	void matchesReference() {
+		Base58 base58 = new Base58();
+		Random random = new Random(1);
+		for (int length = 0; length < 80; length++) {
+			for (int i = 0; i < 20; i++) {
+				byte[] input = new byte[length];
+				random.nextBytes(input);
+				// Some inputs with leading zero bytes
+				for (int z = 0; z < Math.min(length, i % 4); z++)
+					input[z] = 0;
+				String encoded = base58.encode(input);
+				assertEquals(reference(input), encoded);
+				assertArrayEquals(input, base58.decode(encoded));
+			}
+		}
+	}
+
+	@Test
+	void rejectsCharactersOutsideAlphabet() {
+		Base58 base58 = new Base58();
+		for (String input : new String[] { "0", "O", "I", "l", "9f4Q+8", " 9f4Q", "\u00e9" })
+			assertThrows(IllegalArgumentException.class, () -> base58.decode(input));
+	}
+}
@@ -0,0 +1,51 @@
+package com.satergo.jledger.protocol.ergo;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Blake2b256Test {
+
+	private static final HexFormat HEX = HexFormat.of();
+
+	/** 0, 1, 2, ... wrapping at 256 */
+	private static byte[] sequence(int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = (byte) i;
+		return bytes;
+	}
+
+	private static String digest(byte[] input) {
+		return HEX.formatHex(Blake2b256.digest(input));
+	}
+
+	@Test
+	void knownAnswers() {
+		assertEquals("0e5751c026e543b2e8ab2eb06099daa1d1e5df47778f7787faab45cdf12fe3a8", digest(new byte[0]));
+		assertEquals("bddd813c634239723171ef3fee98579b94964e3bb1cb3e427262c8c068d52319", digest("abc".getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	/** Exactly one block, one byte into the second block, and several blocks */
+	@Test
+	void blockBoundaries() {
+		assertEquals("c3582f71ebb2be66fa5dd750f80baae97554f3b015663c8be377cfcb2488c1d1", digest(sequence(128)));
+		assertEquals("f7f3c46ba2564ff4c4c162da1f5b605f9f1c4aa6a20652a9f9a337c1a2f5b9c9", digest(sequence(129)));
+		assertEquals("540b20132d8aeae54057cb69c24f95d26a1c472cc700dd450defe9bb796d4f14", digest(sequence(512)));
+	}
+
+	@Test
+	void reusedInstanceWithOffsets() {
+		Blake2b256 blake2b = new Blake2b256();
+		byte[] input = new byte[3 + 512];
+		System.arraycopy(sequence(512), 0, input, 3, 512);
+		byte[] out = new byte[2 + Blake2b256.DIGEST_LENGTH];
+		blake2b.digest(input, 3, 512, out, 2);
+		blake2b.digest(input, 3, 512, out, 2);
+		assertArrayEquals(Blake2b256.digest(sequence(512)), Arrays.copyOfRange(out, 2, out.length));
+	}
+}
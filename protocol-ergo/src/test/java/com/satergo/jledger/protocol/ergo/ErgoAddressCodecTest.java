@@ -0,0 +1,102 @@
+package com.satergo.jledger.protocol.ergo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ErgoAddressCodecTest {
+
+	private static final HexFormat HEX = HexFormat.of();
+
+	private static final String MAINNET = "9f4QF8AD1nQ3nJahQVkMj8hFSVVzVom77b52JU7EW71Zexg6N8v";
+	private static final String MAINNET_HEX = "0102472963123ce32c057907c7a7268bc09f45d9ca57819d3327b9e7497d7b1cc347ef602a97";
+	private static final String TESTNET = "3WvsT2Gm4EpsM9Pg18PdY6XyhNNMqXDsvJTbbf6ihLvAmSb7u5RN";
+	private static final String TESTNET_HEX = "1102229ac0a22560d7bdfa4eb1de64e688390e85339c08aaf018b22d5ce93593192f378dc915";
+
+	@Test
+	void mainnetRoundTrip() {
+		byte[] bytes = ErgoAddressCodec.decode(MAINNET);
+		assertArrayEquals(HEX.parseHex(MAINNET_HEX), bytes);
+		assertEquals(MAINNET, ErgoAddressCodec.encode(bytes));
+		assertEquals(ErgoNetworkType.MAINNET, ErgoAddressCodec.getNetworkType(bytes));
+		assertEquals(ErgoAddressCodec.Type.P2PK, ErgoAddressCodec.getType(bytes));
+		byte[] content = ErgoAddressCodec.getContent(bytes);
+		assertArrayEquals(HEX.parseHex(MAINNET_HEX.substring(2, 2 + 66)), content);
+		assertEquals(MAINNET, ErgoAddressCodec.encode(ErgoNetworkType.MAINNET, ErgoAddressCodec.Type.P2PK, content));
+	}
+
+	@Test
+	void testnetRoundTrip() {
+		byte[] bytes = ErgoAddressCodec.decode(TESTNET);
+		assertArrayEquals(HEX.parseHex(TESTNET_HEX), bytes);
+		assertEquals(TESTNET, ErgoAddressCodec.encode(bytes));
+		assertEquals(ErgoNetworkType.TESTNET, ErgoAddressCodec.getNetworkType(bytes));
+		assertEquals(TESTNET, ErgoAddressCodec.encode(ErgoNetworkType.TESTNET, ErgoAddressCodec.Type.P2PK, ErgoAddressCodec.getContent(bytes)));
+	}
+
+	@Test
+	void rejectsBadChecksum() {
+		byte[] bytes = HEX.parseHex(MAINNET_HEX);
+		bytes[bytes.length - 1] ^= 1;
+		assertThrows(IllegalArgumentException.class, () -> ErgoAddressCodec.encode(bytes));
+		assertThrows(IllegalArgumentException.class, () -> ErgoAddressCodec.decode(new Base58().encode(bytes)));
+		// A changed content byte also breaks the checksum
+		char[] chars = MAINNET.toCharArray();
+		chars[10] = chars[10] == 'a' ? 'b' : 'a';
+		assertThrows(IllegalArgumentException.class, () -> ErgoAddressCodec.decode(new String(chars)));
+	}
+
+	/** Addresses with a correct checksum but an unknown network or address type */
+	@Test
+	void rejectsBadPrefix() {
+		for (int prefix : new int[] { 0x21, 0x00, 0x04, 0x1F }) {
+			byte[] bytes = HEX.parseHex(MAINNET_HEX);
+			bytes[0] = (byte) prefix;
+			String address = new Base58().encode(withChecksum(bytes));
+			assertThrows(IllegalArgumentException.class, () -> ErgoAddressCodec.decode(address), Integer.toHexString(prefix));
+		}
+	}
+
+	@Test
+	void rejectsBadCharacter() {
+		assertThrows(IllegalArgumentException.class, () -> ErgoAddressCodec.decode(MAINNET.replace('Q', '0')));
+		assertThrows(IllegalArgumentException.class, () -> ErgoAddressCodec.decode(MAINNET + "l"));
+	}
+
+	@Test
+	void rejectsWrongLength() {
+		assertThrows(IllegalArgumentException.class, () -> ErgoAddressCodec.decode(""));
+		assertThrows(IllegalArgumentException.class, () -> ErgoAddressCodec.decode(new Base58().encode(withChecksum(new byte[] { 0x01, 0, 0, 0, 0 }))));
+		// P2PK with a checksum that matches, but one content byte missing or added
+		byte[] shorter = withChecksum(Arrays.copyOf(HEX.parseHex(MAINNET_HEX), 37));
+		byte[] longer = withChecksum(Arrays.copyOf(HEX.parseHex(MAINNET_HEX), 39));
+		assertThrows(IllegalArgumentException.class, () -> ErgoAddressCodec.decode(new Base58().encode(shorter)));
+		assertThrows(IllegalArgumentException.class, () -> ErgoAddressCodec.decode(new Base58().encode(longer)));
+		assertThrows(IllegalArgumentException.class, () -> ErgoAddressCodec.encode(ErgoNetworkType.MAINNET, ErgoAddressCodec.Type.P2PK, new byte[32]));
+	}
+
+	@Test
+	void bulkMatchesSingle() {
+		String[] addresses = { MAINNET, TESTNET, MAINNET, "3WwXpssaZwcNzaGMv3AgxBdTPJQBt5gCmqBsg3DykQ39bYdhJBsN",
+				"9hEQHEMyY1K1vs79vJXFtNjr2dbQbtWXF99oVWGJ5c4xbcLdBsw" };
+		byte[][] decoded = ErgoAddressCodec.decodeAll(addresses);
+		for (int i = 0; i < addresses.length; i++)
+			assertArrayEquals(ErgoAddressCodec.decode(addresses[i]), decoded[i]);
+		String[] encoded = ErgoAddressCodec.encodeAll(decoded);
+		for (int i = 0; i < addresses.length; i++)
+			assertEquals(ErgoAddressCodec.encode(decoded[i]), encoded[i]);
+		assertEquals(Arrays.asList(addresses), Arrays.asList(encoded));
+		// One invalid entry fails the whole call
+		assertThrows(IllegalArgumentException.class, () -> ErgoAddressCodec.decodeAll(new String[] { MAINNET, MAINNET.substring(1) }));
+	}
+
+	/** Replaces the last 4 bytes with the checksum of the rest */
+	private static byte[] withChecksum(byte[] bytes) {
+		byte[] hash = Blake2b256.digest(Arrays.copyOf(bytes, bytes.length - ErgoAddressCodec.CHECKSUM_LENGTH));
+		System.arraycopy(hash, 0, bytes, bytes.length - ErgoAddressCodec.CHECKSUM_LENGTH, ErgoAddressCodec.CHECKSUM_LENGTH);
+		return bytes;
+	}
+}
@@ -0,0 +1,184 @@
+package com.satergo.jledger.protocol.ergo;
+
+import com.satergo.jledger.APDUCommand;
+import com.satergo.jledger.APDUResponse;
+import com.satergo.jledger.DeviceScheduler;
+import com.satergo.jledger.LedgerDevice;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ErgoAuthSessionTest {
+
+	private static final int[] PATH = { 0x8000002C, 0x800001AD, 0x80000000, 0, 0 };
+	private static final APDUCommand OPEN_APP = new APDUCommand(0xE0, 0xD8, 0, 0, new byte[] { 'E', 'r', 'g', 'o' });
+
+	/** Records the auth tokens of deriveAddress commands and answers with the next queued status, 0x9000 by default */
+	private static final class FakeDevice implements LedgerDevice {
+		private final DeviceScheduler scheduler = new DeviceScheduler();
+		final List<Integer> tokens = new ArrayList<>();
+		final ArrayDeque<Integer> statuses = new ArrayDeque<>();
+		int opens, closes;
+
+		@Override public int getProductId() { return 0x1011; }
+		@Override public void open() { opens++; }
+		@Override public void close() { closes++; }
+		@Override public void writeAPDU(APDUCommand apdu) { throw new UnsupportedOperationException(); }
+		@Override public APDUResponse readAPDU() { throw new UnsupportedOperationException(); }
+		@Override public DeviceScheduler getScheduler() { return scheduler; }
+
+		@Override
+		public APDUResponse exchange(APDUCommand apdu) {
+			if (apdu.getINS() == 0x11) {
+				assertEquals(0x02, apdu.getP2(), "auth token flag");
+				byte[] data = apdu.getData();
+				tokens.add(ByteBuffer.wrap(data, data.length - 4, 4).getInt());
+			}
+			int sw = statuses.isEmpty() ? 0x9000 : statuses.poll();
+			return new APDUResponse(new byte[] { (byte) (sw >> 8), (byte) sw });
+		}
+
+		int lastToken() {
+			return tokens.get(tokens.size() - 1);
+		}
+	}
+
+	private static void derive(ErgoAuthSession session) {
+		session.deriveAddress(ErgoProtocol.DerivationAction.RETURN, ErgoNetworkType.MAINNET, PATH);
+	}
+
+	private static void display(ErgoAuthSession session) {
+		session.deriveAddress(ErgoProtocol.DerivationAction.DISPLAY, ErgoNetworkType.MAINNET, PATH);
+	}
+
+	private static void assertCounts(ErgoAuthSession session, long hits, long misses) {
+		assertEquals(hits, session.getHitCount(), "hits");
+		assertEquals(misses, session.getMissCount(), "misses");
+	}
+
+	@Test
+	void reusesTokenAfterSuccess() {
+		FakeDevice device = new FakeDevice();
+		ErgoAuthSession session = new ErgoAuthSession(device);
+		derive(session);
+		derive(session);
+		derive(session);
+		assertEquals(1, device.tokens.stream().distinct().count());
+		assertNotEquals(0, device.lastToken());
+		assertCounts(session, 2, 1);
+		assertEquals(2.0 / 3, session.getHitRate(), 1e-9);
+	}
+
+	@Test
+	void failedCommandDoesNotAcceptToken() {
+		FakeDevice device = new FakeDevice();
+		ErgoAuthSession session = new ErgoAuthSession(device);
+		// The user rejected the request
+		device.statuses.add(0x6985);
+		assertThrows(ErgoLedgerException.class, () -> derive(session));
+		derive(session);
+		derive(session);
+		// Same token, but only asked once it had succeeded
+		assertEquals(1, device.tokens.stream().distinct().count());
+		assertCounts(session, 1, 2);
+		assertEquals(0, session.getRotationCount());
+	}
+
+	@Test
+	void openAndCloseRotate() {
+		FakeDevice device = new FakeDevice();
+		ErgoAuthSession session = new ErgoAuthSession(device);
+		session.getDevice().open();
+		derive(session);
+		derive(session);
+		int first = device.lastToken();
+		session.getDevice().close();
+		session.getDevice().open();
+		derive(session);
+		int second = device.lastToken();
+		assertNotEquals(first, second);
+		session.getDevice().close();
+		assertEquals(2, device.opens);
+		assertEquals(2, device.closes);
+		assertEquals(4, session.getRotationCount());
+		assertCounts(session, 1, 2);
+	}
+
+	@Test
+	void appSwitchCommandRotates() {
+		FakeDevice device = new FakeDevice();
+		ErgoAuthSession session = new ErgoAuthSession(device);
+		derive(session);
+		int first = device.lastToken();
+		session.getDevice().exchange(OPEN_APP);
+		derive(session);
+		assertNotEquals(first, device.lastToken());
+		assertEquals(1, session.getRotationCount());
+		assertCounts(session, 0, 2);
+		// Other commands do not rotate
+		session.getDevice().exchange(new APDUCommand(0xE0, 0x01, 0, 0));
+		derive(session);
+		assertEquals(1, session.getRotationCount());
+		assertCounts(session, 1, 2);
+	}
+
+	/** 6E00 and 6D02 mean that the dashboard or another app answered */
+	@Test
+	void otherAppStatusRotates() {
+		for (int sw : new int[] { 0x6E00, 0x6D02 }) {
+			FakeDevice device = new FakeDevice();
+			ErgoAuthSession session = new ErgoAuthSession(device);
+			derive(session);
+			int first = device.lastToken();
+			device.statuses.add(sw);
+			assertThrows(ErgoLedgerException.class, () -> derive(session));
+			assertEquals(1, session.getRotationCount(), Integer.toHexString(sw));
+			derive(session);
+			assertNotEquals(first, device.lastToken(), Integer.toHexString(sw));
+			derive(session);
+			// The failed call was a hit, it was sent with the accepted old token
+			assertCounts(session, 2, 2);
+		}
+	}
+
+	@Test
+	void explicitRotation() {
+		FakeDevice device = new FakeDevice();
+		ErgoAuthSession session = new ErgoAuthSession(device);
+		derive(session);
+		int first = device.lastToken();
+		session.rotate();
+		derive(session);
+		assertNotEquals(first, device.lastToken());
+		assertCounts(session, 0, 2);
+	}
+
+	/** The app asks the user every time an address is displayed, whatever the token */
+	@Test
+	void displayIsAlwaysMiss() {
+		FakeDevice device = new FakeDevice();
+		ErgoAuthSession session = new ErgoAuthSession(device);
+		display(session);
+		display(session);
+		assertCounts(session, 0, 2);
+		// Displaying did not make the token count as accepted
+		derive(session);
+		assertCounts(session, 0, 3);
+		// With an accepted token, displaying is still a miss and the token stays accepted
+		display(session);
+		assertCounts(session, 0, 4);
+		derive(session);
+		assertCounts(session, 1, 4);
+		assertEquals(1, device.tokens.stream().distinct().count());
+	}
+
+	@Test
+	void noCallsHitRate() {
+		assertEquals(0, new ErgoAuthSession(new FakeDevice()).getHitRate(), 0);
+	}
+}
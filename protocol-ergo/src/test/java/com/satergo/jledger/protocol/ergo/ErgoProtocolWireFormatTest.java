@@ -0,0 +1,250 @@
+package com.satergo.jledger.protocol.ergo;
+
+import com.satergo.jledger.APDUCommand;
+import com.satergo.jledger.APDUResponse;
+import com.satergo.jledger.DeviceScheduler;
+import com.satergo.jledger.LedgerDevice;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The exact APDUs of every command. The expected bytes were produced by the hand-written encoders that the generated
+ * codecs replaced, so they pin the wire format.
+ */
+class ErgoProtocolWireFormatTest {
+
+	private static final HexFormat HEX = HexFormat.of();
+	private static final int[] PATH_2 = { 0x8000002C, 0x800001AD };
+	private static final int[] PATH_5 = { 0x8000002C, 0x800001AD, 0x80000000, 0, 7 };
+	private static final Integer AUTH_TOKEN = 0x12345678;
+	/** Box ID, frame count 2, frame index 0, value, 1 token, attestation */
+	private static final String FRAME_HEX = "f0".repeat(32) + "02" + "00" + "000000003b9aca00" + "01"
+			+ "a0".repeat(32) + "0000000000000005" + "ab".repeat(16);
+
+	private interface Call {
+		void run(ErgoProtocol protocol) throws ErgoLedgerException;
+	}
+
+	/** Records the last command and answers it with the given data and 0x9000 */
+	private static final class RecordingDevice implements LedgerDevice {
+		private final DeviceScheduler scheduler = new DeviceScheduler();
+		private final byte[] response;
+		APDUCommand sent;
+
+		RecordingDevice(String responseHex) {
+			this.response = HEX.parseHex(responseHex + "9000");
+		}
+
+		@Override public int getProductId() { return 0x1011; }
+		@Override public void open() {}
+		@Override public void close() {}
+		@Override public void writeAPDU(APDUCommand apdu) { throw new UnsupportedOperationException(); }
+		@Override public APDUResponse readAPDU() { throw new UnsupportedOperationException(); }
+		@Override public DeviceScheduler getScheduler() { return scheduler; }
+
+		@Override
+		public APDUResponse exchange(APDUCommand apdu) {
+			sent = apdu;
+			return new APDUResponse(response);
+		}
+	}
+
+	private static byte[] bytes(int first, int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = (byte) (first + i);
+		return bytes;
+	}
+
+	private static ErgoResponse.AttestedBoxFrame frame(int index) {
+		byte[] raw = HEX.parseHex(FRAME_HEX);
+		raw[33] = (byte) index;
+		return new ErgoResponse.AttestedBoxFrame(Arrays.copyOfRange(raw, 0, 32), 2, index, 1_000_000_000L,
+				List.of(new ErgoProtocol.TokenValue(HEX.parseHex("a0".repeat(32)), 5)), Arrays.copyOfRange(raw, raw.length - 16, raw.length), raw);
+	}
+
+	private static void assertSent(String expectedHex, String responseHex, Call call) throws ErgoLedgerException {
+		RecordingDevice device = new RecordingDevice(responseHex);
+		call.run(new ErgoProtocol(device));
+		assertEquals(expectedHex, HEX.formatHex(device.sent.getBytes()));
+	}
+
+	@Test
+	void getAppVersion() throws ErgoLedgerException {
+		assertSent("e001000000", "01020300", p -> p.getAppVersion());
+	}
+
+	@Test
+	void getAppName() throws ErgoLedgerException {
+		assertSent("e002000000", "4572676f", p -> p.getAppName());
+	}
+
+	@Test
+	void getExtendedPublicKey() throws ErgoLedgerException {
+		assertSent("e010010009028000002c800001ad", "0211111111111111111111111111111111111111111111111111111111111111112222222222222222222222222222222222222222222222222222222222222222", p -> p.getExtendedPublicKey(PATH_2, null));
+	}
+
+	@Test
+	void getExtendedPublicKeyWithAuthToken() throws ErgoLedgerException {
+		assertSent("e01002000d028000002c800001ad12345678", "0211111111111111111111111111111111111111111111111111111111111111112222222222222222222222222222222222222222222222222222222222222222", p -> p.getExtendedPublicKey(PATH_2, AUTH_TOKEN));
+	}
+
+	@Test
+	void deriveAddressReturn() throws ErgoLedgerException {
+		assertSent("e01101011600058000002c800001ad800000000000000000000007", "0101010101010101010101010101010101010101010101010101010101010101010101010101", p -> p.deriveAddress(ErgoProtocol.DerivationAction.RETURN, ErgoNetworkType.MAINNET, PATH_5, null));
+	}
+
+	@Test
+	void deriveAddressDisplayWithAuthToken() throws ErgoLedgerException {
+		assertSent("e01102021a10058000002c800001ad80000000000000000000000712345678", "", p -> p.deriveAddress(ErgoProtocol.DerivationAction.DISPLAY, ErgoNetworkType.TESTNET, PATH_5, AUTH_TOKEN));
+	}
+
+	@Test
+	void attestBoxStart() throws ErgoLedgerException {
+		assertSent("e020010137000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1f0102000000003b9aca0000000024000aae600200000000", "2a", p -> p.attestBoxStart(bytes(0x00, 32), 0x0102, 1_000_000_000L, 36, 700_000, 2, 0, null));
+	}
+
+	@Test
+	void attestBoxStartWithAuthToken() throws ErgoLedgerException {
+		assertSent("e02001023b000102030405060708090a0b0c0d0e0f101112131415161718191a1b1c1d1e1fffffffffffffffffffff0102030405060708ff090a0b0c12345678", "2a", p -> p.attestBoxStart(bytes(0x00, 32), 0xFFFF, -1L, 0x01020304, 0x05060708, 255, 0x090A0B0C, AUTH_TOKEN));
+	}
+
+	@Test
+	void attestAddErgoTreeChunk() throws ErgoLedgerException {
+		assertSent("e020022a24404142434445464748494a4b4c4d4e4f505152535455565758595a5b5c5d5e5f60616263", "", p -> p.attestAddErgoTreeChunk(0x2a, bytes(0x40, 36)));
+	}
+
+	@Test
+	void attestAddTokens() throws ErgoLedgerException {
+		assertSent("e020032a50a0a1a2a3a4a5a6a7a8a9aaabacadaeafb0b1b2b3b4b5b6b7b8b9babbbcbdbebf0000000000000005c0c1c2c3c4c5c6c7c8c9cacbcccdcecfd0d1d2d3d4d5d6d7d8d9dadbdcdddedf7fffffffffffffff", "01", p -> p.attestAddTokens(0x2a, List.of(new ErgoProtocol.TokenValue(bytes(0xA0, 32), 5), new ErgoProtocol.TokenValue(bytes(0xC0, 32), Long.MAX_VALUE))));
+	}
+
+	@Test
+	void attestAddRegistersChunk() throws ErgoLedgerException {
+		assertSent("e020042a0a70717273747576777879", "", p -> p.attestAddRegistersChunk(0x2a, bytes(0x70, 10)));
+	}
+
+	@Test
+	void getAttestedBoxFrame() throws ErgoLedgerException {
+		assertSent("e020052a0100", FRAME_HEX, p -> p.getAttestedBoxFrame(0x2a, 0));
+	}
+
+	@Test
+	void startP2PKSigning() throws ErgoLedgerException {
+		assertSent("e02101011600058000002c800001ad800000000000000000000007", "2b", p -> p.startP2PKSigning(ErgoNetworkType.MAINNET, PATH_5, null));
+	}
+
+	@Test
+	void startP2PKSigningWithAuthToken() throws ErgoLedgerException {
+		assertSent("e02101021a10058000002c800001ad80000000000000000000000712345678", "2b", p -> p.startP2PKSigning(ErgoNetworkType.TESTNET, PATH_5, AUTH_TOKEN));
+	}
+
+	@Test
+	void startTransaction() throws ErgoLedgerException {
+		assertSent("e021102b0700020001030104", "", p -> p.startTransaction(0x2b, 2, 1, 3, 0x0104));
+	}
+
+	@Test
+	void addTokenIds() throws ErgoLedgerException {
+		assertSent("e021112b40a0a1a2a3a4a5a6a7a8a9aaabacadaeafb0b1b2b3b4b5b6b7b8b9babbbcbdbebfc0c1c2c3c4c5c6c7c8c9cacbcccdcecfd0d1d2d3d4d5d6d7d8d9dadbdcdddedf", "", p -> p.addTokenIds(0x2b, List.of(bytes(0xA0, 32), bytes(0xC0, 32))));
+	}
+
+	@Test
+	void addInputBoxFrameFirst() throws ErgoLedgerException {
+		assertSent("e021122b67f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f00200000000003b9aca0001a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a00000000000000005abababababababababababababababab00000a0b", "", p -> p.addInputBoxFrame(0x2b, frame(0), 0x0A0B));
+	}
+
+	@Test
+	void addInputBoxFrameNext() throws ErgoLedgerException {
+		assertSent("e021122b63f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f0f00201000000003b9aca0001a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a0a00000000000000005abababababababababababababababab", "", p -> p.addInputBoxFrame(0x2b, frame(1), 0x0A0B));
+	}
+
+	@Test
+	void addInputBoxContextExtensionChunk() throws ErgoLedgerException {
+		assertSent("e021132b055051525354", "", p -> p.addInputBoxContextExtensionChunk(0x2b, bytes(0x50, 5)));
+	}
+
+	@Test
+	void addDataInputs() throws ErgoLedgerException {
+		assertSent("e021142b20606162636465666768696a6b6c6d6e6f707172737475767778797a7b7c7d7e7f", "", p -> p.addDataInputs(0x2b, List.of(bytes(0x60, 32))));
+	}
+
+	@Test
+	void addOutputBoxStart() throws ErgoLedgerException {
+		assertSent("e021152b1500000000000f424000000024000aae600200000007", "", p -> p.addOutputBoxStart(0x2b, 1_000_000L, 36, 700_000, 2, 7));
+	}
+
+	@Test
+	void addOutputBoxErgoTreeChunk() throws ErgoLedgerException {
+		assertSent("e021162b24404142434445464748494a4b4c4d4e4f505152535455565758595a5b5c5d5e5f60616263", "", p -> p.addOutputBoxErgoTreeChunk(0x2b, bytes(0x40, 36)));
+	}
+
+	@Test
+	void addOutputBoxMinerFeeTree() throws ErgoLedgerException {
+		assertSent("e021172b00", "", p -> p.addOutputBoxMinerFeeTree(0x2b));
+	}
+
+	@Test
+	void addOutputBoxChangeTree() throws ErgoLedgerException {
+		assertSent("e021182b15058000002c800001ad800000000000000000000007", "", p -> p.addOutputBoxChangeTree(0x2b, PATH_5));
+	}
+
+	@Test
+	void addOutputBoxTokens() throws ErgoLedgerException {
+		assertSent("e021192b18000000000000000000000001000000010102030405060708", "", p -> p.addOutputBoxTokens(0x2b, List.of(new ErgoProtocol.TokenIndexValue(0, 1), new ErgoProtocol.TokenIndexValue(1, 0x0102030405060708L))));
+	}
+
+	@Test
+	void addOutputBoxRegistersChunk() throws ErgoLedgerException {
+		assertSent("e0211a2b03707172", "", p -> p.addOutputBoxRegistersChunk(0x2b, bytes(0x70, 3)));
+	}
+
+	@Test
+	void confirmAndSign() throws ErgoLedgerException {
+		assertSent("e021202b00", "3333333333333333333333333333333333333333333333333333333333333333333333333333333333333333333333333333333333333333", p -> p.confirmAndSign(0x2b));
+	}
+
+	// Decoding
+
+	private static ErgoProtocol answering(String responseHex) {
+		return new ErgoProtocol(new RecordingDevice(responseHex));
+	}
+
+	@Test
+	void decodesVersionIgnoringTrailingData() {
+		assertEquals(new ErgoResponse.Version(1, 2, 3, true), answering("01020301").getAppVersion());
+		assertEquals(new ErgoResponse.Version(1, 2, 3, false), answering("0102030000ff").getAppVersion());
+	}
+
+	@Test
+	void decodesExtendedPublicKeyIgnoringTrailingData() throws ErgoLedgerException {
+		ErgoResponse.ExtendedPublicKey key = answering("02" + "11".repeat(32) + "22".repeat(32) + "ffff").getExtendedPublicKey(PATH_2, null);
+		assertArrayEquals(HEX.parseHex("02" + "11".repeat(32)), key.compressedPublicKey());
+		assertArrayEquals(HEX.parseHex("22".repeat(32)), key.chainCode());
+	}
+
+	@Test
+	void decodesAttestedBoxFrame() throws ErgoLedgerException {
+		ErgoResponse.AttestedBoxFrame frame = answering(FRAME_HEX).getAttestedBoxFrame(0x2a, 0);
+		assertArrayEquals(HEX.parseHex("f0".repeat(32)), frame.boxId());
+		assertEquals(2, frame.frameCount());
+		assertEquals(0, frame.frameIndex());
+		assertEquals(1_000_000_000L, frame.value());
+		assertEquals(List.of(new ErgoProtocol.TokenValue(HEX.parseHex("a0".repeat(32)), 5)), frame.tokens());
+		assertArrayEquals(HEX.parseHex("ab".repeat(16)), frame.attestation());
+		assertArrayEquals(HEX.parseHex(FRAME_HEX), frame.rawData());
+	}
+
+	@Test
+	void malformedResponsesThrowIllegalStateException() {
+		assertThrows(IllegalStateException.class, () -> answering("0102").getAppVersion());
+		assertThrows(IllegalStateException.class, () -> answering("02" + "11".repeat(32)).getExtendedPublicKey(PATH_2, null));
+		assertThrows(IllegalStateException.class, () -> answering(FRAME_HEX + "00").getAttestedBoxFrame(0x2a, 0));
+		assertThrows(IllegalStateException.class, () -> answering(FRAME_HEX.substring(0, FRAME_HEX.length() - 2)).getAttestedBoxFrame(0x2a, 0));
+	}
+}
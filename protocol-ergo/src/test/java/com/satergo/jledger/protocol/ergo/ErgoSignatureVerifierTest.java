@@ -0,0 +1,195 @@
+package com.satergo.jledger.protocol.ergo;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ErgoSignatureVerifierTest {
+
+	private static final HexFormat HEX = HexFormat.of();
+
+	/** The signature test vector of sigmastate, created by the reference implementation */
+	private static final byte[] MESSAGE = HEX.parseHex("1dc01772ee0171f5f614c673e3c7fa1107a8cf727bdf5a6dadb379e93c0d1d00");
+	private static final byte[] PUBLIC_KEY = HEX.parseHex("03cb0d49e4eae7e57059a3da8ac52626d26fc11330af8fb093fa597d8b93deb7b1");
+	private static final byte[] SIGNATURE = HEX.parseHex("bcb866ba434d5c77869ddcbc3f09ddd62dd2d2539bf99076674d1ae0c32338ea"
+			+ "95581fdc18a3b66789904938ac641eba1a66d234070207a2");
+
+	/** Another key whose signature has a response z starting with a zero byte */
+	private static final byte[] OTHER_MESSAGE = HEX.parseHex("00112233445566778899aabbccddeeff");
+	private static final byte[] OTHER_PUBLIC_KEY = HEX.parseHex("02085fe2ca7a5758957ea811bd8e743d9cee6bc20072f1470a888c43a1091a8e8b");
+	private static final byte[] OTHER_SIGNATURE = HEX.parseHex("54573539ede6b57cebd4a80748cc46881fe77d70edfa7a1e"
+			+ "0088c26010b4e0164cc8b3aeb1f26913c0970a4033ad6b7c50d405cb875dd2d8");
+
+	private static byte[] flipped(byte[] bytes, int index) {
+		byte[] copy = bytes.clone();
+		copy[index] ^= 1;
+		return copy;
+	}
+
+	/** Signs with the verifier's own challenge, for tests that need many signatures */
+	private static byte[] sign(BigInteger secret, byte[] message, Random random) {
+		byte[] publicKey = Secp256k1.compress(Secp256k1.multiply(Secp256k1.G, secret));
+		BigInteger r = new BigInteger(255, random).add(BigInteger.ONE);
+		byte[] commitment = Secp256k1.compress(Secp256k1.multiply(Secp256k1.G, r));
+		byte[] challenge = Arrays.copyOf(ErgoSignatureVerifier.challenge(publicKey, commitment, message), ErgoSignatureVerifier.CHALLENGE_LENGTH);
+		byte[] z = r.add(new BigInteger(1, challenge).multiply(secret)).mod(Secp256k1.N).toByteArray();
+		byte[] signature = new byte[ErgoSignatureVerifier.SIGNATURE_LENGTH];
+		System.arraycopy(challenge, 0, signature, 0, challenge.length);
+		int length = Math.min(z.length, 32);
+		System.arraycopy(z, z.length - length, signature, signature.length - length, length);
+		return signature;
+	}
+
+	@Test
+	void knownAnswer() {
+		ErgoSignatureVerifier verifier = new ErgoSignatureVerifier();
+		assertTrue(verifier.verify(MESSAGE, PUBLIC_KEY, SIGNATURE));
+		assertTrue(verifier.verify(OTHER_MESSAGE, OTHER_PUBLIC_KEY, OTHER_SIGNATURE));
+	}
+
+	@Test
+	void knownAnswerWithTable() {
+		ErgoSignatureVerifier verifier = new ErgoSignatureVerifier();
+		verifier.precompute(PUBLIC_KEY);
+		assertEquals(1, verifier.getCachedKeyCount());
+		assertTrue(verifier.verify(MESSAGE, PUBLIC_KEY, SIGNATURE));
+		assertFalse(verifier.verify(MESSAGE, PUBLIC_KEY, flipped(SIGNATURE, 0)));
+	}
+
+	@Test
+	void rejectsChangedSignature() {
+		ErgoSignatureVerifier verifier = new ErgoSignatureVerifier();
+		for (int i = 0; i < ErgoSignatureVerifier.SIGNATURE_LENGTH; i++)
+			assertFalse(verifier.verify(MESSAGE, PUBLIC_KEY, flipped(SIGNATURE, i)), "byte " + i);
+		assertFalse(verifier.verify(MESSAGE, PUBLIC_KEY, new byte[ErgoSignatureVerifier.SIGNATURE_LENGTH]));
+	}
+
+	@Test
+	void rejectsChangedMessage() {
+		ErgoSignatureVerifier verifier = new ErgoSignatureVerifier();
+		assertFalse(verifier.verify(flipped(MESSAGE, 31), PUBLIC_KEY, SIGNATURE));
+		assertFalse(verifier.verify(Arrays.copyOf(MESSAGE, 33), PUBLIC_KEY, SIGNATURE));
+		assertFalse(verifier.verify(new byte[0], PUBLIC_KEY, SIGNATURE));
+	}
+
+	@Test
+	void rejectsWrongKey() {
+		ErgoSignatureVerifier verifier = new ErgoSignatureVerifier();
+		assertFalse(verifier.verify(MESSAGE, OTHER_PUBLIC_KEY, SIGNATURE));
+		assertFalse(verifier.verify(OTHER_MESSAGE, PUBLIC_KEY, OTHER_SIGNATURE));
+		// The negated key, same x with the other y
+		byte[] negated = PUBLIC_KEY.clone();
+		negated[0] = 0x02;
+		assertFalse(verifier.verify(MESSAGE, negated, SIGNATURE));
+	}
+
+	@Test
+	void rejectsMalformedKey() {
+		ErgoSignatureVerifier verifier = new ErgoSignatureVerifier();
+		// x = 5 has no point on the curve
+		byte[] offCurve = new byte[33];
+		offCurve[0] = 0x02;
+		offCurve[32] = 5;
+		byte[] xTooLarge = HEX.parseHex("02" + "ff".repeat(32));
+		byte[] badPrefix = PUBLIC_KEY.clone();
+		badPrefix[0] = 0x04;
+		for (byte[] publicKey : List.of(offCurve, xTooLarge, badPrefix, new byte[33], Arrays.copyOf(PUBLIC_KEY, 32), Arrays.copyOf(PUBLIC_KEY, 65))) {
+			assertFalse(verifier.verify(MESSAGE, publicKey, SIGNATURE), HEX.formatHex(publicKey));
+			if (publicKey.length == 33)
+				assertThrows(IllegalArgumentException.class, () -> verifier.precompute(publicKey));
+		}
+		assertEquals(0, verifier.getCachedKeyCount());
+	}
+
+	@Test
+	void rejectsWrongSignatureLength() {
+		ErgoSignatureVerifier verifier = new ErgoSignatureVerifier();
+		assertFalse(verifier.verify(MESSAGE, PUBLIC_KEY, Arrays.copyOf(SIGNATURE, 55)));
+		assertFalse(verifier.verify(MESSAGE, PUBLIC_KEY, Arrays.copyOf(SIGNATURE, 57)));
+		assertFalse(verifier.verify(MESSAGE, PUBLIC_KEY, Arrays.copyOf(SIGNATURE, 64)));
+		assertFalse(verifier.verify(MESSAGE, PUBLIC_KEY, new byte[0]));
+	}
+
+	/** A repeated key is verified with a table, which must give the same results as without one */
+	@Test
+	void tableMatchesPlainVerification() {
+		Random random = new Random(3);
+		BigInteger secret = new BigInteger(255, random).add(BigInteger.ONE);
+		byte[] publicKey = Secp256k1.compress(Secp256k1.multiply(Secp256k1.G, secret));
+		List<ErgoSignatureVerifier.SignatureCheck> checks = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			byte[] message = new byte[i];
+			random.nextBytes(message);
+			byte[] signature = sign(secret, message, random);
+			// Every third signature is damaged in a different place
+			if (i % 3 == 1)
+				signature = flipped(signature, i % ErgoSignatureVerifier.SIGNATURE_LENGTH);
+			checks.add(new ErgoSignatureVerifier.SignatureCheck(message, publicKey, signature));
+		}
+		ErgoSignatureVerifier plain = new ErgoSignatureVerifier(0, 1);
+		ErgoSignatureVerifier caching = new ErgoSignatureVerifier(16, 2);
+		boolean[] results = caching.verifyAll(checks, new ForkJoinPool(4));
+		assertEquals(1, caching.getCachedKeyCount());
+		for (int i = 0; i < checks.size(); i++) {
+			ErgoSignatureVerifier.SignatureCheck check = checks.get(i);
+			boolean expected = plain.verify(check.message(), check.publicKey(), check.signature());
+			assertEquals(i % 3 != 1, expected);
+			assertEquals(expected, results[i], "check " + i);
+			assertEquals(expected, caching.verify(check.message(), check.publicKey(), check.signature()), "check " + i);
+		}
+		assertEquals(0, plain.getCachedKeyCount());
+	}
+
+	@Test
+	void verifyAllKeepsOrder() {
+		Random random = new Random(4);
+		BigInteger secret = BigInteger.valueOf(0xC0FFEE);
+		byte[] publicKey = Secp256k1.compress(Secp256k1.multiply(Secp256k1.G, secret));
+		byte[] message = { 1, 2, 3 };
+		byte[] valid = sign(secret, message, random);
+		List<ErgoSignatureVerifier.SignatureCheck> checks = new ArrayList<>();
+		boolean[] expected = new boolean[100];
+		for (int i = 0; i < expected.length; i++) {
+			switch (i % 5) {
+				case 0 -> checks.add(new ErgoSignatureVerifier.SignatureCheck(MESSAGE, PUBLIC_KEY, SIGNATURE));
+				case 1 -> checks.add(new ErgoSignatureVerifier.SignatureCheck(MESSAGE, PUBLIC_KEY, flipped(SIGNATURE, 30)));
+				case 2 -> checks.add(new ErgoSignatureVerifier.SignatureCheck(message, publicKey, valid));
+				case 3 -> checks.add(new ErgoSignatureVerifier.SignatureCheck(message, new byte[33], valid));
+				default -> checks.add(new ErgoSignatureVerifier.SignatureCheck(message, publicKey, Arrays.copyOf(valid, 20)));
+			}
+			expected[i] = i % 5 == 0 || i % 5 == 2;
+		}
+		// Shuffled so that valid and invalid checks are not in a fixed pattern
+		List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < expected.length; i++)
+			order.add(i);
+		Collections.shuffle(order, new Random(5));
+		List<ErgoSignatureVerifier.SignatureCheck> shuffled = new ArrayList<>();
+		for (int i : order)
+			shuffled.add(checks.get(i));
+		boolean[] results = new ErgoSignatureVerifier().verifyAll(shuffled);
+		for (int i = 0; i < order.size(); i++)
+			assertEquals(expected[order.get(i)], results[i], "check " + i);
+	}
+
+	@Test
+	void tablesAreEvicted() {
+		ErgoSignatureVerifier verifier = new ErgoSignatureVerifier(1, 1);
+		verifier.precompute(PUBLIC_KEY);
+		verifier.precompute(OTHER_PUBLIC_KEY);
+		assertEquals(1, verifier.getCachedKeyCount());
+		assertTrue(verifier.verify(MESSAGE, PUBLIC_KEY, SIGNATURE));
+		assertTrue(verifier.verify(OTHER_MESSAGE, OTHER_PUBLIC_KEY, OTHER_SIGNATURE));
+		verifier.clearCache();
+		assertEquals(0, verifier.getCachedKeyCount());
+	}
+}
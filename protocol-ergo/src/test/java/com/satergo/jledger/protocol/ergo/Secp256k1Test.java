@@ -0,0 +1,64 @@
+package com.satergo.jledger.protocol.ergo;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.HexFormat;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Secp256k1Test {
+
+	private static final HexFormat HEX = HexFormat.of();
+
+	private static String multiplyG(BigInteger k) {
+		return HEX.formatHex(Secp256k1.compress(Secp256k1.multiply(Secp256k1.G, k)));
+	}
+
+	@Test
+	void knownMultiples() {
+		assertEquals("0279be667ef9dcbbac55a06295ce870b07029bfcdb2dce28d959f2815b16f81798", multiplyG(BigInteger.ONE));
+		assertEquals("02c6047f9441ed7d6d3045406e95c07cd85c778e4b8cef3ca7abac09b95c709ee5", multiplyG(BigInteger.TWO));
+		assertEquals("02f9308a019258c31049344f85f89d5229b531c845836f99b08601f113bce036f9", multiplyG(BigInteger.valueOf(3)));
+		assertEquals("0276d2fdf1302d1fa9556f4df94ec84cefba6d482e54f47c6c2a238c1baa560f0e", multiplyG(BigInteger.valueOf(0xDEADBEEFL)));
+		assertEquals("03cdd1c738e14ebf6ca7b7aa795f5852110cf730f6553d425bfe53f14132052f1e", multiplyG(BigInteger.ONE.shiftLeft(255).add(BigInteger.valueOf(12345))));
+		assertEquals("0379be667ef9dcbbac55a06295ce870b07029bfcdb2dce28d959f2815b16f81798", multiplyG(Secp256k1.N.subtract(BigInteger.ONE)));
+		assertTrue(Secp256k1.multiply(Secp256k1.G, Secp256k1.N).isInfinity());
+	}
+
+	@Test
+	void compressRoundTrip() {
+		Random random = new Random(7);
+		for (int i = 0; i < 50; i++) {
+			byte[] compressed = Secp256k1.compress(Secp256k1.multiply(Secp256k1.G, new BigInteger(256, random)));
+			assertArrayEquals(compressed, Secp256k1.compress(Secp256k1.decompress(compressed)));
+		}
+	}
+
+	/** The table, the windowed multiplication and repeated addition agree */
+	@Test
+	void tableMatchesMultiply() {
+		Random random = new Random(8);
+		Secp256k1.Point base = Secp256k1.multiply(Secp256k1.G, new BigInteger(256, random));
+		Secp256k1.Table table = new Secp256k1.Table(base, 192);
+		for (int i = 0; i < 50; i++) {
+			BigInteger k = new BigInteger(192, random);
+			assertArrayEquals(Secp256k1.compress(Secp256k1.multiply(base, k)), Secp256k1.compress(table.multiplyAdd(k, Secp256k1.Point.INFINITY)));
+		}
+		Secp256k1.Point sum = Secp256k1.Point.INFINITY;
+		for (int k = 1; k <= 40; k++) {
+			sum = Secp256k1.add(sum, base);
+			assertArrayEquals(Secp256k1.compress(sum), Secp256k1.compress(Secp256k1.multiply(base, BigInteger.valueOf(k))));
+			assertArrayEquals(Secp256k1.compress(sum), Secp256k1.compress(table.multiplyAdd(BigInteger.valueOf(k), Secp256k1.Point.INFINITY)));
+		}
+		assertThrows(IllegalArgumentException.class, () -> table.multiplyAdd(BigInteger.ONE.shiftLeft(192), Secp256k1.Point.INFINITY));
+	}
+
+	@Test
+	void pointPlusNegationIsInfinity() {
+		Secp256k1.Point p = Secp256k1.multiply(Secp256k1.G, BigInteger.valueOf(99));
+		assertTrue(Secp256k1.add(p, p.negate()).isInfinity());
+		assertArrayEquals(Secp256k1.compress(Secp256k1.twice(p)), Secp256k1.compress(Secp256k1.add(p, p)));
+	}
+}
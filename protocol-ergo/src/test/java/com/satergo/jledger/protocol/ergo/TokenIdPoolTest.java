@@ -0,0 +1,77 @@
+package com.satergo.jledger.protocol.ergo;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenIdPoolTest {
+
+	private static byte[] id(int seed) {
+		byte[] bytes = new byte[32];
+		Arrays.fill(bytes, (byte) seed);
+		bytes[31] = (byte) (seed >> 8);
+		return bytes;
+	}
+
+	@Test
+	void internReturnsCanonicalInstance() {
+		TokenIdPool pool = new TokenIdPool();
+		ErgoProtocol.TokenId first = pool.intern(id(1));
+		assertSame(first, pool.intern(id(1)));
+		assertSame(first, pool.intern(new ErgoProtocol.TokenId(id(1))));
+		assertNotSame(first, pool.intern(id(2)));
+		assertEquals(2, pool.size());
+	}
+
+	@Test
+	void hashCodeCoversAllBytes() {
+		byte[] a = id(1), b = id(1);
+		b[31] ^= 1;
+		assertEquals(Arrays.hashCode(a), new ErgoProtocol.TokenId(a).hashCode());
+		assertNotEquals(new ErgoProtocol.TokenId(a).hashCode(), new ErgoProtocol.TokenId(b).hashCode());
+	}
+
+	@Test
+	void canonicalInstanceCannotBeModified() {
+		TokenIdPool pool = new TokenIdPool();
+		byte[] bytes = id(3);
+		ErgoProtocol.TokenId canonical = pool.intern(bytes);
+		bytes[0] = 0;
+		canonical.bytes()[1] = 0;
+		assertArrayEquals(id(3), canonical.bytes());
+		assertSame(canonical, pool.intern(id(3)));
+	}
+
+	@Test
+	void decodedTokensShareInstances() {
+		ErgoProtocol.TokenValue token = new ErgoProtocol.TokenValue(id(4), 10);
+		byte[] encoded = TokenValueCodec.encode(token);
+		ErgoProtocol.TokenValue decoded = TokenValueCodec.decode(encoded);
+		assertEquals(token, decoded);
+		assertSame(decoded.id(), TokenValueCodec.decode(encoded).id());
+		assertSame(TokenIdPool.shared().intern(id(4)), decoded.id());
+	}
+
+	@Test
+	void constructorKeepsGivenId() {
+		ErgoProtocol.TokenId id = new ErgoProtocol.TokenId(id(6));
+		assertSame(id, new ErgoProtocol.TokenValue(id, 1).id());
+		assertNotSame(new ErgoProtocol.TokenValue(id(6), 1).id(), new ErgoProtocol.TokenValue(id(6), 1).id());
+	}
+
+	@Test
+	void collectedInstancesAreRemoved() throws InterruptedException {
+		TokenIdPool pool = new TokenIdPool();
+		ErgoProtocol.TokenId kept = pool.intern(id(5));
+		for (int i = 0; i < 1000; i++)
+			pool.intern(id(0x100 + i));
+		for (int i = 0; i < 50 && pool.size() > 1; i++) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertEquals(1, pool.size());
+		assertSame(kept, pool.intern(id(5)));
+	}
+}
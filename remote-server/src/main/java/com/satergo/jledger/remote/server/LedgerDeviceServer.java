@@ -0,0 +1,485 @@
+package com.satergo.jledger.remote.server;
+
+import com.satergo.jledger.APDUCommand;
+import com.satergo.jledger.LedgerDevice;
+import org.jspecify.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.satergo.jledger.transport.remote.RemoteProtocol.*;
+
+/**
+ * Publishes local devices over TCP, to be used with {@code RemoteConnection} from the transport-remote library.
+ * <p>
+ * The devices must already be open and are not closed by the server. A single thread handles all connections with NIO,
+ * the commands are executed on a fixed number of worker threads so that a slow device does not hold up the others.
+ * Lease requests that have to wait do not occupy a worker thread, and they wait at most the maximum lease timeout
+ * of the server, regardless of the timeout requested by the client.
+ *
+ * @see com.satergo.jledger.transport.remote.RemoteProtocol
+ */
+public class LedgerDeviceServer implements Closeable {
+
+	private static final System.Logger LOGGER = System.getLogger(LedgerDeviceServer.class.getName());
+
+	private final List<LedgerDevice> devices;
+	private final List<DeviceLease> leases = new ArrayList<>();
+	private final InetSocketAddress address;
+	private final long maxLeaseTimeoutMillis;
+
+	private final ExecutorService executor;
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "jledger-remote-server-timer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final ConcurrentLinkedQueue<Connection> writable = new ConcurrentLinkedQueue<>();
+	private @Nullable Selector selector;
+	private @Nullable ServerSocketChannel serverChannel;
+	private @Nullable Thread thread;
+	private volatile boolean running;
+
+	/**
+	 * Uses one worker thread per device plus one, and a maximum lease timeout of one minute.
+	 */
+	public LedgerDeviceServer(List<LedgerDevice> devices, InetSocketAddress address) {
+		this(devices, address, devices.size() + 1, Duration.ofMinutes(1));
+	}
+
+	/**
+	 * @param workerThreads the number of threads that execute requests
+	 * @param maxLeaseTimeout the longest time a lease request may wait for the device, longer timeouts requested by clients are shortened
+	 */
+	public LedgerDeviceServer(List<LedgerDevice> devices, InetSocketAddress address, int workerThreads, Duration maxLeaseTimeout) {
+		if (devices.size() > 0xFFFF) throw new IllegalArgumentException("too many devices");
+		if (workerThreads < 1) throw new IllegalArgumentException("workerThreads must be positive");
+		if (maxLeaseTimeout.isNegative()) throw new IllegalArgumentException("negative maxLeaseTimeout");
+		this.devices = List.copyOf(devices);
+		for (int i = 0; i < devices.size(); i++)
+			leases.add(new DeviceLease(i));
+		this.address = address;
+		this.maxLeaseTimeoutMillis = maxLeaseTimeout.toMillis();
+		this.executor = Executors.newFixedThreadPool(workerThreads, r -> {
+			Thread thread = new Thread(r, "jledger-remote-server-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public synchronized void start() {
+		if (thread != null)
+			throw new IllegalStateException("Already started");
+		try {
+			selector = Selector.open();
+			serverChannel = ServerSocketChannel.open();
+			serverChannel.bind(address);
+			serverChannel.configureBlocking(false);
+			serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		running = true;
+		thread = new Thread(this::run, "jledger-remote-server");
+		thread.start();
+	}
+
+	/** The address the server is listening on, useful when it was started on port 0 */
+	public SocketAddress getLocalAddress() {
+		if (serverChannel == null)
+			throw new IllegalStateException("Not started");
+		try {
+			return serverChannel.getLocalAddress();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (thread == null || selector == null)
+			throw new IllegalStateException("Not started");
+		running = false;
+		selector.wakeup();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdown();
+			timer.shutdownNow();
+		}
+	}
+
+	private void run() {
+		Selector selector = this.selector;
+		ServerSocketChannel serverChannel = this.serverChannel;
+		assert selector != null && serverChannel != null;
+		try {
+			while (running) {
+				selector.select();
+				Connection connection;
+				while ((connection = writable.poll()) != null) {
+					if (connection.key.isValid())
+						connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				}
+				for (SelectionKey key : selector.selectedKeys()) {
+					if (!key.isValid()) continue;
+					if (key.isAcceptable()) {
+						try {
+							accept(selector, serverChannel);
+						} catch (IOException e) {
+							// Only this connection is lost, the server keeps running
+							LOGGER.log(System.Logger.Level.WARNING, "Could not accept a connection", e);
+						}
+						continue;
+					}
+					Connection c = (Connection) key.attachment();
+					try {
+						if (key.isReadable()) c.read();
+						if (key.isValid() && key.isWritable()) c.write();
+					} catch (IOException | RuntimeException e) {
+						c.close();
+					}
+				}
+				selector.selectedKeys().clear();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			for (SelectionKey key : selector.keys()) {
+				if (key.attachment() instanceof Connection c)
+					c.close();
+			}
+			try {
+				serverChannel.close();
+				selector.close();
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	private void accept(Selector selector, ServerSocketChannel serverChannel) throws IOException {
+		SocketChannel channel = serverChannel.accept();
+		if (channel == null) return;
+		try {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+			key.attach(new Connection(channel, key));
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * The lease of one device. Sessions that wait for it are queued in order, without occupying a thread.
+	 */
+	private final class DeviceLease {
+		private final int index;
+		private @Nullable Connection.Session holder;
+		private final ArrayDeque<Connection.Session.Waiter> waiters = new ArrayDeque<>();
+
+		DeviceLease(int index) {
+			this.index = index;
+		}
+
+		/** @return whether the lease was granted immediately, otherwise the waiter is queued if the timeout is positive */
+		synchronized boolean acquire(Connection.Session.Waiter waiter, long timeoutMillis) {
+			if (holder == null && waiters.isEmpty()) {
+				holder = waiter.session();
+				return true;
+			}
+			if (timeoutMillis > 0) {
+				waiters.add(waiter);
+				waiter.timeout = timer.schedule(() -> timeout(waiter), timeoutMillis, TimeUnit.MILLISECONDS);
+			}
+			return false;
+		}
+
+		private void timeout(Connection.Session.Waiter waiter) {
+			synchronized (this) {
+				if (!waiters.remove(waiter)) return;
+			}
+			waiter.session().leaseFailed(waiter.request(), "Device is leased by another session");
+		}
+
+		/** @return whether the waiter was still waiting */
+		synchronized boolean cancel(Connection.Session.Waiter waiter) {
+			return waiters.remove(waiter);
+		}
+
+		void release(Connection.Session session) {
+			Connection.Session.Waiter next;
+			synchronized (this) {
+				if (holder != session) return;
+				next = waiters.poll();
+				holder = next == null ? null : next.session();
+			}
+			if (next != null) {
+				ScheduledFuture<?> timeout = next.timeout;
+				if (timeout != null) timeout.cancel(false);
+				next.session().leaseGranted(next.request(), index);
+			}
+		}
+	}
+
+	private final class Connection {
+		private final SocketChannel channel;
+		private final SelectionKey key;
+		private final ByteBuffer readBuffer = ByteBuffer.allocate(4 + MAX_FRAME_LENGTH);
+		private final ConcurrentLinkedQueue<ByteBuffer> outgoing = new ConcurrentLinkedQueue<>();
+		private final ConcurrentHashMap<Integer, Session> sessions = new ConcurrentHashMap<>();
+
+		Connection(SocketChannel channel, SelectionKey key) {
+			this.channel = channel;
+			this.key = key;
+		}
+
+		void read() throws IOException {
+			if (channel.read(readBuffer) == -1) {
+				close();
+				return;
+			}
+			readBuffer.flip();
+			while (readBuffer.remaining() >= 4) {
+				int length = readBuffer.getInt(readBuffer.position());
+				if (length < HEADER_LENGTH || length > MAX_FRAME_LENGTH)
+					throw new IOException("Invalid frame length " + length);
+				if (readBuffer.remaining() < 4 + length)
+					break;
+				readBuffer.getInt();
+				int type = readBuffer.get() & 0xFF;
+				int session = readBuffer.getInt();
+				int request = readBuffer.getInt();
+				byte[] payload = new byte[length - HEADER_LENGTH];
+				readBuffer.get(payload);
+				handle(type, session, request, payload);
+			}
+			readBuffer.compact();
+		}
+
+		void write() throws IOException {
+			ByteBuffer buffer;
+			while ((buffer = outgoing.peek()) != null) {
+				channel.write(buffer);
+				if (buffer.hasRemaining())
+					return;
+				outgoing.poll();
+			}
+			key.interestOps(SelectionKey.OP_READ);
+			// A response may have been queued after the queue was found empty
+			if (!outgoing.isEmpty())
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+
+		void send(int type, int session, int request, byte[] payload) {
+			outgoing.add(frame(type, session, request, payload));
+			writable.add(this);
+			key.selector().wakeup();
+		}
+
+		void sendError(int session, int request, String message) {
+			send(ERROR, session, request, message.getBytes(StandardCharsets.UTF_8));
+		}
+
+		private void handle(int type, int sessionId, int request, byte[] payload) {
+			switch (type) {
+				case LIST -> {
+					ByteBuffer response = ByteBuffer.allocate(2 + devices.size() * 2).putShort((short) devices.size());
+					for (LedgerDevice device : devices)
+						response.putShort((short) device.getProductId());
+					send(RESPONSE, sessionId, request, response.array());
+				}
+				case LEASE -> {
+					if (payload.length != 6) {
+						sendError(sessionId, request, "Invalid lease request");
+						return;
+					}
+					ByteBuffer buffer = ByteBuffer.wrap(payload);
+					int deviceIndex = Short.toUnsignedInt(buffer.getShort());
+					long timeoutMillis = Integer.toUnsignedLong(buffer.getInt());
+					Session session = sessions.computeIfAbsent(sessionId, Session::new);
+					session.submit(() -> session.lease(request, deviceIndex, timeoutMillis));
+				}
+				case EXCHANGE -> {
+					Session session = sessions.get(sessionId);
+					if (session == null) {
+						sendError(sessionId, request, "Session has not leased a device");
+						return;
+					}
+					session.submit(() -> session.exchange(request, payload));
+				}
+				case RELEASE -> {
+					Session session = sessions.remove(sessionId);
+					if (session == null) {
+						sendError(sessionId, request, "Session has not leased a device");
+						return;
+					}
+					session.submit(() -> {
+						session.release();
+						send(RESPONSE, sessionId, request, new byte[0]);
+					});
+				}
+				default -> sendError(sessionId, request, "Unknown request type " + type);
+			}
+		}
+
+		void close() {
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException ignored) {
+			}
+			for (Session session : sessions.values()) {
+				session.cancelWaiting();
+				session.submit(session::release);
+			}
+			sessions.clear();
+		}
+
+		/** Executes the requests of one session in order, one at a time */
+		private final class Session {
+			/** A lease request that waits for the device */
+			final class Waiter {
+				private final int request, deviceIndex;
+				volatile @Nullable ScheduledFuture<?> timeout;
+
+				Waiter(int request, int deviceIndex) {
+					this.request = request;
+					this.deviceIndex = deviceIndex;
+				}
+
+				Session session() { return Session.this; }
+				int request() { return request; }
+			}
+
+			private final int id;
+			private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+			private final AtomicBoolean scheduled = new AtomicBoolean();
+			/** Set while a lease request waits, the following requests are executed after it has been answered */
+			private volatile @Nullable Waiter waiting;
+			private volatile int deviceIndex = -1;
+
+			Session(int id) {
+				this.id = id;
+			}
+
+			void submit(Runnable task) {
+				tasks.add(task);
+				schedule();
+			}
+
+			private void schedule() {
+				if (waiting == null && !tasks.isEmpty() && scheduled.compareAndSet(false, true))
+					executor.execute(this::drain);
+			}
+
+			private void drain() {
+				Runnable task;
+				while (waiting == null && (task = tasks.poll()) != null)
+					task.run();
+				scheduled.set(false);
+				schedule();
+			}
+
+			void lease(int request, int index, long timeoutMillis) {
+				if (deviceIndex != -1) {
+					sendError(id, request, "Session has already leased a device");
+					return;
+				}
+				if (index >= devices.size()) {
+					leaseFailed(request, "No device at index " + index);
+					return;
+				}
+				Waiter waiter = new Waiter(request, index);
+				// Set before the waiter is queued, it may be granted right away by another thread
+				waiting = waiter;
+				if (leases.get(index).acquire(waiter, Math.min(timeoutMillis, maxLeaseTimeoutMillis))) {
+					leaseGranted(request, index);
+				} else if (waiter.timeout == null) {
+					leaseFailed(request, "Device is leased by another session");
+				}
+			}
+
+			void leaseGranted(int request, int index) {
+				deviceIndex = index;
+				send(RESPONSE, id, request, new byte[0]);
+				resume();
+			}
+
+			void leaseFailed(int request, String error) {
+				sessions.remove(id, this);
+				sendError(id, request, error);
+				resume();
+			}
+
+			private void resume() {
+				waiting = null;
+				schedule();
+			}
+
+			/** Stops waiting for a lease because the connection was closed */
+			void cancelWaiting() {
+				Waiter waiter = waiting;
+				if (waiter != null && leases.get(waiter.deviceIndex).cancel(waiter))
+					resume();
+			}
+
+			void exchange(int request, byte[] apdu) {
+				if (deviceIndex == -1) {
+					sendError(id, request, "Session has not leased a device");
+					return;
+				}
+				try {
+					APDUCommand command = parseCommand(apdu);
+					send(RESPONSE, id, request, devices.get(deviceIndex).exchange(command).getBytes());
+				} catch (RuntimeException e) {
+					sendError(id, request, String.valueOf(e.getMessage()));
+				}
+			}
+
+			void release() {
+				if (deviceIndex != -1) {
+					leases.get(deviceIndex).release(this);
+					deviceIndex = -1;
+				}
+			}
+		}
+	}
+
+	private static APDUCommand parseCommand(byte[] apdu) {
+		if (apdu.length < 4)
+			throw new IllegalArgumentException("Invalid command APDU");
+		int cla = apdu[0] & 0xFF, ins = apdu[1] & 0xFF, p1 = apdu[2] & 0xFF, p2 = apdu[3] & 0xFF;
+		if (apdu.length == 4)
+			return new APDUCommand(cla, ins, p1, p2);
+		if (apdu.length != 5 + (apdu[4] & 0xFF))
+			throw new IllegalArgumentException("Invalid command APDU");
+		if (apdu.length == 5)
+			return new APDUCommand(cla, ins, p1, p2, true);
+		return new APDUCommand(cla, ins, p1, p2, Arrays.copyOfRange(apdu, 5, apdu.length));
+	}
+}
@@ -0,0 +1,10 @@
+import org.jspecify.annotations.NullMarked;
+
+@NullMarked
+module com.satergo.jledger.remote.server {
+
+	requires static org.jspecify;
+	requires com.satergo.jledger.core;
+	requires com.satergo.jledger.transport.remote;
+	exports com.satergo.jledger.remote.server;
+}
\ No newline at end of file
@@ -0,0 +1,194 @@
+package com.satergo.jledger.remote.server;
+
+import com.satergo.jledger.APDUCommand;
+import com.satergo.jledger.APDUResponse;
+import com.satergo.jledger.DeviceScheduler;
+import com.satergo.jledger.LedgerDevice;
+import com.satergo.jledger.transport.remote.RemoteConnection;
+import com.satergo.jledger.transport.remote.RemoteDeviceException;
+import com.satergo.jledger.transport.remote.RemoteLedgerDevice;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LedgerDeviceServerTest {
+
+	/** Answers every command with its INS and data followed by 9000 */
+	private static final class EchoDevice implements LedgerDevice {
+		final DeviceScheduler scheduler = new DeviceScheduler();
+
+		@Override public int getProductId() { return 0x5011; }
+		@Override public void open() {}
+		@Override public void close() {}
+		@Override public void writeAPDU(APDUCommand apdu) { throw new UnsupportedOperationException(); }
+		@Override public APDUResponse readAPDU() { throw new UnsupportedOperationException(); }
+		@Override public DeviceScheduler getScheduler() { return scheduler; }
+
+		@Override
+		public APDUResponse exchange(APDUCommand apdu) {
+			try (DeviceScheduler.Lease lease = scheduler.acquire(DeviceScheduler.Priority.INTERACTIVE)) {
+				if (apdu.getINS() == 0xFF)
+					throw new IllegalStateException("Device failure");
+				byte[] data = apdu.getData();
+				byte[] response = new byte[data.length + 3];
+				response[0] = (byte) apdu.getINS();
+				System.arraycopy(data, 0, response, 1, data.length);
+				response[response.length - 2] = (byte) 0x90;
+				return new APDUResponse(response);
+			}
+		}
+	}
+
+	private final List<AutoCloseable> resources = new ArrayList<>();
+	private LedgerDeviceServer server;
+
+	@AfterEach
+	void closeResources() throws Exception {
+		for (int i = resources.size() - 1; i >= 0; i--)
+			resources.get(i).close();
+	}
+
+	private RemoteConnection start(Duration maxLeaseTimeout) {
+		server = new LedgerDeviceServer(List.of(new EchoDevice()),
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2, maxLeaseTimeout);
+		server.start();
+		resources.add(server);
+		return connect();
+	}
+
+	private RemoteConnection connect() {
+		RemoteConnection connection = RemoteConnection.connect((InetSocketAddress) server.getLocalAddress());
+		resources.add(connection);
+		return connection;
+	}
+
+	@Test
+	@Timeout(10)
+	void listsAndExchanges() {
+		RemoteConnection connection = start(Duration.ofMinutes(1));
+		List<RemoteConnection.DeviceInfo> devices = connection.listDevices();
+		assertEquals(List.of(new RemoteConnection.DeviceInfo(0, 0x5011)), devices);
+		RemoteLedgerDevice device = connection.device(devices.get(0), Duration.ZERO);
+		device.open();
+		APDUResponse response = device.exchange(new APDUCommand(0xE0, 0x01, 0, 0, new byte[] { 1, 2 }));
+		assertArrayEquals(new byte[] { 0x01, 1, 2, (byte) 0x90, 0x00 }, response.getBytes());
+		device.close();
+	}
+
+	@Test
+	@Timeout(10)
+	void pipelinedResponsesKeepOrder() {
+		RemoteConnection connection = start(Duration.ofMinutes(1));
+		RemoteLedgerDevice device = connection.device(connection.listDevices().get(0), Duration.ZERO);
+		device.open();
+		List<CompletableFuture<APDUResponse>> responses = new ArrayList<>();
+		for (int i = 0; i < 50; i++)
+			responses.add(device.exchangeAsync(new APDUCommand(0xE0, i, 0, 0)));
+		for (int i = 0; i < 50; i++)
+			assertEquals(i, responses.get(i).join().getBytes()[0]);
+		device.close();
+	}
+
+	@Test
+	@Timeout(10)
+	void deviceErrorIsReported() {
+		RemoteConnection connection = start(Duration.ofMinutes(1));
+		RemoteLedgerDevice device = connection.device(connection.listDevices().get(0), Duration.ZERO);
+		device.open();
+		RemoteDeviceException e = assertThrows(RemoteDeviceException.class, () -> device.exchange(new APDUCommand(0xE0, 0xFF, 0, 0)));
+		assertEquals("Device failure", e.getMessage());
+		// The session is still usable
+		assertEquals(0x9000, device.exchange(new APDUCommand(0xE0, 0x01, 0, 0)).getSW());
+		device.close();
+	}
+
+	@Test
+	@Timeout(10)
+	void leaseIsExclusive() {
+		RemoteConnection connection = start(Duration.ofMinutes(1));
+		RemoteConnection.DeviceInfo info = connection.listDevices().get(0);
+		RemoteLedgerDevice first = connection.device(info, Duration.ZERO);
+		RemoteLedgerDevice second = connection.device(info, Duration.ZERO);
+		first.open();
+		assertThrows(RemoteDeviceException.class, second::open);
+		first.close();
+		second.open();
+		assertEquals(0x9000, second.exchange(new APDUCommand(0xE0, 0x01, 0, 0)).getSW());
+		second.close();
+	}
+
+	@Test
+	@Timeout(10)
+	void waitingLeaseIsGrantedOnRelease() throws Exception {
+		RemoteConnection connection = start(Duration.ofMinutes(1));
+		RemoteConnection.DeviceInfo info = connection.listDevices().get(0);
+		RemoteLedgerDevice first = connection.device(info, Duration.ZERO);
+		RemoteLedgerDevice second = connect().device(info, Duration.ofMinutes(1));
+		first.open();
+		CompletableFuture<Void> opened = CompletableFuture.runAsync(second::open);
+		Thread.sleep(200);
+		assertFalse(opened.isDone());
+		// The waiting lease does not hold up the holder
+		assertEquals(0x9000, first.exchange(new APDUCommand(0xE0, 0x01, 0, 0)).getSW());
+		first.close();
+		opened.get();
+		assertEquals(0x9000, second.exchange(new APDUCommand(0xE0, 0x01, 0, 0)).getSW());
+		second.close();
+	}
+
+	@Test
+	@Timeout(10)
+	void serverShortensLeaseTimeout() {
+		RemoteConnection connection = start(Duration.ofMillis(100));
+		RemoteConnection.DeviceInfo info = connection.listDevices().get(0);
+		RemoteLedgerDevice first = connection.device(info, Duration.ZERO);
+		RemoteLedgerDevice second = connection.device(info, Duration.ofHours(1));
+		first.open();
+		long start = System.nanoTime();
+		assertThrows(RemoteDeviceException.class, second::open);
+		assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+		first.close();
+	}
+
+	@Test
+	@Timeout(10)
+	void closedConnectionReleasesLease() throws Exception {
+		RemoteConnection connection = start(Duration.ofMinutes(1));
+		RemoteConnection.DeviceInfo info = connection.listDevices().get(0);
+		RemoteConnection other = connect();
+		other.device(info, Duration.ZERO).open();
+		RemoteLedgerDevice device = connection.device(info, Duration.ofSeconds(5));
+		other.close();
+		device.open();
+		assertEquals(0x9000, device.exchange(new APDUCommand(0xE0, 0x01, 0, 0)).getSW());
+		device.close();
+	}
+
+	@Test
+	@Timeout(10)
+	void closedConnectionStopsWaiting() throws Exception {
+		RemoteConnection connection = start(Duration.ofMinutes(1));
+		RemoteConnection.DeviceInfo info = connection.listDevices().get(0);
+		RemoteLedgerDevice first = connection.device(info, Duration.ZERO);
+		first.open();
+		RemoteConnection other = connect();
+		CompletableFuture<Void> opened = CompletableFuture.runAsync(other.device(info, Duration.ofMinutes(1))::open);
+		Thread.sleep(200);
+		other.close();
+		assertThrows(Exception.class, opened::join);
+		// The cancelled waiter is not granted the lease
+		first.close();
+		RemoteLedgerDevice third = connection.device(info, Duration.ZERO);
+		third.open();
+		third.close();
+	}
+}
@@ -2,11 +2,14 @@ package com.satergo.jledger.transport.hid4java;
 
 import com.satergo.jledger.APDUCommand;
 import com.satergo.jledger.APDUResponse;
+import com.satergo.jledger.DeviceScheduler;
 import com.satergo.jledger.LedgerDevice;
 import org.hid4java.HidDevice;
+import org.jspecify.annotations.Nullable;
 
 import java.nio.ByteBuffer;
-import java.util.concurrent.locks.ReentrantLock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @see <a href="https://github.com/LedgerHQ/ledger-live/blob/develop/libs/ledgerjs/packages/react-native-hid/android/src/main/java/com/ledgerwallet/hid/LedgerHelper.java">com.ledgerwallet.hid.LedgerHelper</a>
@@ -17,13 +20,25 @@ public class Hid4javaLedgerDevice implements LedgerDevice {
 	private static final byte TAG = 0x05;
 
 	private final HidDevice hidDevice;
-	private final int channel;
+	/** Replaced after a failed exchange, so that late packets of that exchange belong to another channel */
+	private volatile int channel;
+
+	private volatile @Nullable Duration resyncTimeout;
+	private final AtomicLong recoveries = new AtomicLong(), discardedPackets = new AtomicLong();
 
 	public Hid4javaLedgerDevice(HidDevice hidDevice) {
 		this.hidDevice = hidDevice;
 		this.channel = (int) Math.floor(Math.random() * 0xffff);
 	}
 
+	private void rotateChannel() {
+		int previous = channel, next;
+		do {
+			next = (int) Math.floor(Math.random() * 0xffff);
+		} while (next == previous || next == 0);
+		channel = next;
+	}
+
 	@Override public int getProductId() { return hidDevice.getProductId(); }
 	@Override
 	public void open() {
@@ -32,9 +47,51 @@ public class Hid4javaLedgerDevice implements LedgerDevice {
 	}
 	@Override public void close() { hidDevice.close(); }
 
+	/**
+	 * Enables the resync mode, in which packets left over from an earlier exchange that timed out or was
+	 * interrupted are discarded instead of failing the next exchange. Pending packets are drained before
+	 * writing a command, and packets from other channels or with an unexpected sequence index are skipped
+	 * while reading a response.
+	 * <p>
+	 * Independently of this mode, the device switches to a new channel when writing a command or reading a response
+	 * fails, so that a late response of that exchange is not taken as the response of the next command.
+	 * @param timeout how long to keep discarding packets before giving up, or null to disable the resync mode
+	 */
+	public void setResyncTimeout(@Nullable Duration timeout) {
+		if (timeout != null && timeout.isNegative()) throw new IllegalArgumentException("negative timeout");
+		this.resyncTimeout = timeout;
+	}
+
+	public @Nullable Duration getResyncTimeout() {
+		return resyncTimeout;
+	}
+
+	/** How many times packets had to be discarded to recover in the resync mode */
+	public long getRecoveryCount() {
+		return recoveries.get();
+	}
+
+	/** How many packets have been discarded in the resync mode */
+	public long getDiscardedPacketCount() {
+		return discardedPackets.get();
+	}
+
 	@Override
 	public void writeAPDU(APDUCommand command) {
+		try {
+			write(command);
+		} catch (RuntimeException | Error e) {
+			rotateChannel();
+			throw e;
+		}
+	}
+
+	private void write(APDUCommand command) {
+		Duration timeout = resyncTimeout;
+		if (timeout != null)
+			drain(timeout);
 		byte[] payload = command.getBytes();
+		int channel = this.channel;
 		// Offset inside the payload
 		int offset = 0;
 		ByteBuffer packetBuffer = ByteBuffer.allocate(PACKET_SIZE);
@@ -42,7 +99,7 @@ public class Hid4javaLedgerDevice implements LedgerDevice {
 		while (offset < payload.length) {
 			packetBuffer.position(0);
 			// Write header
-			packetBuffer.putShort((short) this.channel);
+			packetBuffer.putShort((short) channel);
 			packetBuffer.put(TAG);
 			packetBuffer.putShort((short) seq);
 			// The header of the first packet in a sequence contains the length of the entire payload
@@ -71,41 +128,106 @@ public class Hid4javaLedgerDevice implements LedgerDevice {
 			throw new IllegalArgumentException("Invalid sequence index");
 	}
 
+	/**
+	 * Discards the packets that are already waiting to be read.
+	 */
+	private void drain(Duration timeout) {
+		long deadline = System.nanoTime() + timeout.toNanos();
+		byte[] readBuffer = new byte[PACKET_SIZE];
+		long discarded = 0;
+		while (System.nanoTime() - deadline < 0) {
+			int read = hidDevice.read(readBuffer, 0);
+			if (read < 0) throw new RuntimeException(hidDevice.getLastErrorMessage());
+			if (read == 0) break;
+			discarded++;
+		}
+		if (discarded > 0) {
+			discardedPackets.addAndGet(discarded);
+			recoveries.incrementAndGet();
+		}
+	}
+
 	@Override
 	public APDUResponse readAPDU() {
+		try {
+			return read();
+		} catch (RuntimeException | Error e) {
+			// The response may still arrive, it must not be taken as the response of the next command
+			rotateChannel();
+			throw e;
+		}
+	}
+
+	private APDUResponse read() {
+		Duration timeout = resyncTimeout;
 		byte[] readBuffer = new byte[PACKET_SIZE];
-		hidDevice.read(readBuffer);
-		ByteBuffer firstBuf = ByteBuffer.wrap(readBuffer);
+		ByteBuffer result = null;
 		int sequenceIndex = 0;
-		readHeader(firstBuf, sequenceIndex++);
-		int responseLength = Short.toUnsignedInt(firstBuf.getShort());
-		// Resize it to not include the empty data at the end because 64 bytes are returned regardless of how much actual data there is
-		if (responseLength + firstBuf.position() < PACKET_SIZE)
-			firstBuf.limit(firstBuf.position() + responseLength);
-		// Allocate the result buffer
-		ByteBuffer result = ByteBuffer.allocate(responseLength);
-		// Copy the first packet's data
-		result.put(firstBuf);
-		while (result.hasRemaining()) {
-			hidDevice.read(readBuffer);
+		// Time of the first discarded packet, the timeout is counted from there so that waiting for the user is not limited
+		long resyncStart = 0;
+		long discarded = 0;
+		while (result == null || result.hasRemaining()) {
+			if (hidDevice.read(readBuffer) < 0)
+				throw new RuntimeException(hidDevice.getLastErrorMessage());
 			ByteBuffer byteBuf = ByteBuffer.wrap(readBuffer);
-			readHeader(byteBuf, sequenceIndex++);
-			byteBuf.limit(Math.min(PACKET_SIZE, byteBuf.position() + result.remaining()));
+			try {
+				readHeader(byteBuf, sequenceIndex);
+			} catch (IllegalArgumentException | InvalidChannelException e) {
+				// Channel 0 means that the device is locked, not that the packet is stale
+				if (timeout == null || (e instanceof InvalidChannelException ice && ice.received == 0))
+					throw e;
+				if (discarded == 0)
+					resyncStart = System.nanoTime();
+				else if (System.nanoTime() - resyncStart > timeout.toNanos())
+					throw new IllegalStateException("Could not resynchronize within " + timeout + ", " + discarded + " packets discarded", e);
+				byteBuf.rewind();
+				if (sequenceIndex > 0 && isFirstPacket(byteBuf)) {
+					// The response read so far was stale, this is the start of a new one
+					discarded += sequenceIndex;
+					result = null;
+					sequenceIndex = 0;
+					readHeader(byteBuf, sequenceIndex);
+				} else {
+					discarded++;
+					continue;
+				}
+			}
+			sequenceIndex++;
+			if (result == null) {
+				int responseLength = Short.toUnsignedInt(byteBuf.getShort());
+				// Resize it to not include the empty data at the end because 64 bytes are returned regardless of how much actual data there is
+				if (responseLength + byteBuf.position() < PACKET_SIZE)
+					byteBuf.limit(byteBuf.position() + responseLength);
+				// Allocate the result buffer
+				result = ByteBuffer.allocate(responseLength);
+			} else {
+				byteBuf.limit(Math.min(PACKET_SIZE, byteBuf.position() + result.remaining()));
+			}
 			result.put(byteBuf);
 		}
+		if (discarded > 0) {
+			discardedPackets.addAndGet(discarded);
+			recoveries.incrementAndGet();
+		}
 		return new APDUResponse(result.array());
 	}
 
-	private final ReentrantLock lock = new ReentrantLock();
+	private boolean isFirstPacket(ByteBuffer byteBuf) {
+		return Short.toUnsignedInt(byteBuf.getShort(0)) == channel && byteBuf.get(2) == TAG && byteBuf.getShort(3) == 0;
+	}
+
+	private final DeviceScheduler scheduler = new DeviceScheduler();
+
+	@Override
+	public DeviceScheduler getScheduler() {
+		return scheduler;
+	}
 
 	@Override
 	public APDUResponse exchange(APDUCommand apdu) {
-		lock.lock();
-		try {
+		try (DeviceScheduler.Lease lease = scheduler.acquire(DeviceScheduler.Priority.INTERACTIVE)) {
 			writeAPDU(apdu);
 			return readAPDU();
-		} finally {
-			lock.unlock();
 		}
 	}
 }
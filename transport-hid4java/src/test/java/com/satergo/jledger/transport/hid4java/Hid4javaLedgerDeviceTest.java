@@ -0,0 +1,193 @@
+package com.satergo.jledger.transport.hid4java;
+
+import com.satergo.jledger.APDUCommand;
+import org.hid4java.HidDevice;
+import org.hid4java.HidServicesSpecification;
+import org.hid4java.jna.HidDeviceInfoStructure;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Hid4javaLedgerDeviceTest {
+
+	private static final int PACKET_SIZE = 64;
+	private static final APDUCommand COMMAND = new APDUCommand(0xE0, 0x01, 0, 0, true);
+	private static final byte[] RESPONSE = { 1, 2, 3, 0, (byte) 0x90, 0x00 };
+
+	/**
+	 * Records the written packets. Packets that are waiting are also returned by reads with a timeout,
+	 * incoming packets only arrive during a blocking read. A blocking read fails when no packet is left.
+	 */
+	private static final class FakeHidDevice extends HidDevice {
+		final List<byte[]> written = new ArrayList<>();
+		final ArrayDeque<byte[]> waiting = new ArrayDeque<>(), incoming = new ArrayDeque<>();
+		/** The packets to receive for a command written on the channel */
+		IntFunction<List<byte[]>> responder = channel -> packets(channel, RESPONSE);
+
+		FakeHidDevice() {
+			super(new HidDeviceInfoStructure(), null, new HidServicesSpecification());
+		}
+
+		@Override public int getProductId() { return 0x1011; }
+		@Override public String getLastErrorMessage() { return "no packet"; }
+
+		@Override
+		public int write(byte[] message, int packetLength, byte reportId) {
+			written.add(message.clone());
+			// All commands in these tests fit in one packet
+			incoming.addAll(responder.apply(channelOf(message)));
+			return packetLength;
+		}
+
+		@Override
+		public int read(byte[] data) {
+			byte[] packet = waiting.isEmpty() ? incoming.poll() : waiting.poll();
+			if (packet == null) return -1;
+			System.arraycopy(packet, 0, data, 0, PACKET_SIZE);
+			return PACKET_SIZE;
+		}
+
+		@Override
+		public int read(byte[] data, int timeoutMillis) {
+			byte[] packet = waiting.poll();
+			if (packet == null) return 0;
+			System.arraycopy(packet, 0, data, 0, PACKET_SIZE);
+			return PACKET_SIZE;
+		}
+
+		int lastChannel() {
+			return channelOf(written.get(written.size() - 1));
+		}
+	}
+
+	private static int channelOf(byte[] packet) {
+		return ByteBuffer.wrap(packet).getShort() & 0xFFFF;
+	}
+
+	private static byte[] packet(int channel, int sequenceIndex, byte[] payload) {
+		ByteBuffer packet = ByteBuffer.allocate(PACKET_SIZE);
+		packet.putShort((short) channel).put((byte) 0x05).putShort((short) sequenceIndex).put(payload, 0, Math.min(payload.length, packet.remaining()));
+		return packet.array();
+	}
+
+	/** The packets of a response, split like the device does */
+	private static List<byte[]> packets(int channel, byte[] response) {
+		List<byte[]> packets = new ArrayList<>();
+		ByteBuffer data = ByteBuffer.allocate(2 + response.length).putShort((short) response.length).put(response).flip();
+		for (int index = 0; data.hasRemaining(); index++) {
+			byte[] chunk = new byte[Math.min(data.remaining(), PACKET_SIZE - 5)];
+			data.get(chunk);
+			packets.add(packet(channel, index, chunk));
+		}
+		return packets;
+	}
+
+	private static Hid4javaLedgerDevice resyncing(FakeHidDevice hid) {
+		Hid4javaLedgerDevice device = new Hid4javaLedgerDevice(hid);
+		device.setResyncTimeout(Duration.ofSeconds(5));
+		return device;
+	}
+
+	@Test
+	void readsMultiPacketResponse() {
+		FakeHidDevice hid = new FakeHidDevice();
+		byte[] response = new byte[200];
+		for (int i = 0; i < response.length; i++)
+			response[i] = (byte) i;
+		hid.responder = channel -> packets(channel, response);
+		assertArrayEquals(response, new Hid4javaLedgerDevice(hid).exchange(COMMAND).getBytes());
+	}
+
+	@Test
+	void foreignChannelPacketsAreSkipped() {
+		FakeHidDevice hid = new FakeHidDevice();
+		hid.responder = channel -> {
+			List<byte[]> packets = new ArrayList<>(packets(channel ^ 1, new byte[] { 0x6E, 0x00 }));
+			packets.addAll(packets(channel, RESPONSE));
+			return packets;
+		};
+		Hid4javaLedgerDevice device = resyncing(hid);
+		assertArrayEquals(RESPONSE, device.exchange(COMMAND).getBytes());
+		assertEquals(1, device.getDiscardedPacketCount());
+		assertEquals(1, device.getRecoveryCount());
+	}
+
+	@Test
+	void foreignChannelFailsWithoutResync() {
+		FakeHidDevice hid = new FakeHidDevice();
+		hid.responder = channel -> packets(channel ^ 1, RESPONSE);
+		assertThrows(InvalidChannelException.class, () -> new Hid4javaLedgerDevice(hid).exchange(COMMAND));
+	}
+
+	@Test
+	void lockedDeviceFailsInResyncMode() {
+		FakeHidDevice hid = new FakeHidDevice();
+		hid.responder = channel -> packets(0, new byte[] { 0x55, 0x15 });
+		InvalidChannelException e = assertThrows(InvalidChannelException.class, () -> resyncing(hid).exchange(COMMAND));
+		assertEquals(0, e.received);
+	}
+
+	@Test
+	void badSequencePacketsAreSkipped() {
+		FakeHidDevice hid = new FakeHidDevice();
+		hid.responder = channel -> {
+			List<byte[]> packets = new ArrayList<>();
+			packets.add(packet(channel, 3, new byte[10]));
+			packets.addAll(packets(channel, RESPONSE));
+			return packets;
+		};
+		Hid4javaLedgerDevice device = resyncing(hid);
+		assertArrayEquals(RESPONSE, device.exchange(COMMAND).getBytes());
+		assertEquals(1, device.getDiscardedPacketCount());
+	}
+
+	@Test
+	void waitingPacketsAreDrainedBeforeWriting() {
+		FakeHidDevice hid = new FakeHidDevice();
+		Hid4javaLedgerDevice device = resyncing(hid);
+		device.exchange(COMMAND);
+		hid.waiting.addAll(packets(hid.lastChannel(), new byte[] { 9, (byte) 0x90, 0x00 }));
+		assertArrayEquals(RESPONSE, device.exchange(COMMAND).getBytes());
+		assertEquals(1, device.getDiscardedPacketCount());
+	}
+
+	/**
+	 * The response of a failed exchange arrives after the drain of the next exchange, with sequence index 0.
+	 * It must not be taken as the response of the next command.
+	 */
+	@Test
+	void staleResponseAfterFailedExchangeIsSkipped() {
+		FakeHidDevice hid = new FakeHidDevice();
+		Hid4javaLedgerDevice device = resyncing(hid);
+		hid.responder = channel -> List.of();
+		assertThrows(RuntimeException.class, () -> device.exchange(COMMAND));
+		int failedChannel = hid.lastChannel();
+		byte[] stale = { 7, 7, (byte) 0x90, 0x00 };
+		hid.responder = channel -> {
+			List<byte[]> packets = new ArrayList<>(packets(failedChannel, stale));
+			packets.addAll(packets(channel, RESPONSE));
+			return packets;
+		};
+		assertArrayEquals(RESPONSE, device.exchange(COMMAND).getBytes());
+		assertNotEquals(failedChannel, hid.lastChannel());
+		assertArrayEquals(RESPONSE, device.exchange(COMMAND).getBytes());
+	}
+
+	@Test
+	void staleResponseFailsWithoutResync() {
+		FakeHidDevice hid = new FakeHidDevice();
+		Hid4javaLedgerDevice device = new Hid4javaLedgerDevice(hid);
+		hid.responder = channel -> List.of();
+		assertThrows(RuntimeException.class, () -> device.exchange(COMMAND));
+		int failedChannel = hid.lastChannel();
+		hid.responder = channel -> packets(failedChannel, RESPONSE);
+		assertThrows(InvalidChannelException.class, () -> device.exchange(COMMAND));
+	}
+}
@@ -0,0 +1,164 @@
+package com.satergo.jledger.transport.remote;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.satergo.jledger.transport.remote.RemoteProtocol.*;
+
+/**
+ * A connection to a remote device server. Any amount of {@link RemoteLedgerDevice}s can share one connection,
+ * each of them uses its own session.
+ *
+ * @see RemoteProtocol
+ */
+public class RemoteConnection implements Closeable {
+
+	public record DeviceInfo(int index, int productId) {}
+
+	private final SocketChannel channel;
+	private final ReentrantLock writeLock = new ReentrantLock();
+	private final ConcurrentHashMap<Integer, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+	private final AtomicInteger nextRequest = new AtomicInteger();
+	private final AtomicInteger nextSession = new AtomicInteger();
+	private final Thread reader;
+	private volatile boolean closed;
+
+	private RemoteConnection(SocketChannel channel) {
+		this.channel = channel;
+		this.reader = new Thread(this::read, "jledger-remote-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	public static RemoteConnection connect(InetSocketAddress address) {
+		try {
+			SocketChannel channel = SocketChannel.open(address);
+			channel.socket().setTcpNoDelay(true);
+			return new RemoteConnection(channel);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public List<DeviceInfo> listDevices() {
+		ByteBuffer response = ByteBuffer.wrap(await(request(LIST, 0, new byte[0])));
+		int count = Short.toUnsignedInt(response.getShort());
+		ArrayList<DeviceInfo> devices = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+			devices.add(new DeviceInfo(i, Short.toUnsignedInt(response.getShort())));
+		return Collections.unmodifiableList(devices);
+	}
+
+	/**
+	 * @param leaseTimeout how long {@link RemoteLedgerDevice#open()} waits for other sessions to release the device
+	 */
+	public RemoteLedgerDevice device(DeviceInfo deviceInfo, Duration leaseTimeout) {
+		return new RemoteLedgerDevice(this, deviceInfo, leaseTimeout);
+	}
+
+	int newSession() {
+		return nextSession.incrementAndGet();
+	}
+
+	/**
+	 * Sends a request without waiting for the response.
+	 * @return the response payload, or a {@link RemoteDeviceException} if the server rejected the request
+	 */
+	CompletableFuture<byte[]> request(int type, int session, byte[] payload) {
+		int request = nextRequest.incrementAndGet();
+		CompletableFuture<byte[]> future = new CompletableFuture<>();
+		pending.put(request, future);
+		ByteBuffer frame = frame(type, session, request, payload);
+		writeLock.lock();
+		try {
+			if (closed)
+				throw new IllegalStateException("Connection closed");
+			while (frame.hasRemaining())
+				channel.write(frame);
+		} catch (IOException | RuntimeException e) {
+			pending.remove(request);
+			future.completeExceptionally(e);
+		} finally {
+			writeLock.unlock();
+		}
+		return future;
+	}
+
+	static byte[] await(CompletableFuture<byte[]> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException r) throw r;
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private void read() {
+		ByteBuffer length = ByteBuffer.allocate(4);
+		Exception failure;
+		try {
+			while (true) {
+				readFully(length.clear());
+				int frameLength = length.flip().getInt();
+				if (frameLength < HEADER_LENGTH || frameLength > MAX_FRAME_LENGTH)
+					throw new IOException("Invalid frame length " + frameLength);
+				ByteBuffer frame = ByteBuffer.allocate(frameLength);
+				readFully(frame);
+				frame.flip();
+				int type = frame.get() & 0xFF;
+				frame.getInt(); // session
+				int request = frame.getInt();
+				byte[] payload = new byte[frame.remaining()];
+				frame.get(payload);
+				CompletableFuture<byte[]> future = pending.remove(request);
+				if (future == null)
+					continue;
+				switch (type) {
+					case RESPONSE -> future.complete(payload);
+					case ERROR -> future.completeExceptionally(new RemoteDeviceException(new String(payload, StandardCharsets.UTF_8)));
+					default -> future.completeExceptionally(new IOException("Unknown frame type " + type));
+				}
+			}
+		} catch (IOException e) {
+			failure = e;
+		}
+		closed = true;
+		IllegalStateException closedException = new IllegalStateException("Connection closed", failure);
+		pending.values().forEach(future -> future.completeExceptionally(closedException));
+		pending.clear();
+	}
+
+	private void readFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) == -1)
+				throw new EOFException();
+		}
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		try {
+			channel.close();
+			reader.join();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package com.satergo.jledger.transport.remote;
+
+/**
+ * Thrown when the remote device server rejects a request,
+ * for example when the device is leased by another session.
+ */
+public class RemoteDeviceException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public RemoteDeviceException(String message) {
+		super(message);
+	}
+}
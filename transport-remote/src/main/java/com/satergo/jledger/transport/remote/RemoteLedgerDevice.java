@@ -0,0 +1,115 @@
+package com.satergo.jledger.transport.remote;
+
+import com.satergo.jledger.APDUCommand;
+import com.satergo.jledger.APDUResponse;
+import com.satergo.jledger.DeviceScheduler;
+import com.satergo.jledger.LedgerDevice;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+import static com.satergo.jledger.transport.remote.RemoteProtocol.*;
+
+/**
+ * A device published by a remote device server. {@link #open()} leases the device for this instance
+ * and {@link #close()} releases it, other sessions cannot use the device in between.
+ * <p>
+ * Commands can be pipelined, either with {@link #exchangeAsync(APDUCommand)} or by calling {@link #writeAPDU(APDUCommand)}
+ * several times before reading the responses with {@link #readAPDU()}.
+ */
+public class RemoteLedgerDevice implements LedgerDevice {
+
+	private final RemoteConnection connection;
+	private final RemoteConnection.DeviceInfo deviceInfo;
+	private final Duration leaseTimeout;
+
+	private volatile int session = -1;
+	private final DeviceScheduler scheduler = new DeviceScheduler();
+	private final ArrayDeque<CompletableFuture<byte[]>> written = new ArrayDeque<>();
+
+	RemoteLedgerDevice(RemoteConnection connection, RemoteConnection.DeviceInfo deviceInfo, Duration leaseTimeout) {
+		this.connection = connection;
+		this.deviceInfo = deviceInfo;
+		this.leaseTimeout = leaseTimeout;
+	}
+
+	@Override
+	public int getProductId() {
+		return deviceInfo.productId();
+	}
+
+	@Override
+	public void open() {
+		if (session != -1)
+			throw new IllegalStateException("Already open");
+		int newSession = connection.newSession();
+		byte[] payload = ByteBuffer.allocate(6)
+				.putShort((short) deviceInfo.index())
+				.putInt((int) Math.min(leaseTimeout.toMillis(), Integer.MAX_VALUE))
+				.array();
+		RemoteConnection.await(connection.request(LEASE, newSession, payload));
+		session = newSession;
+	}
+
+	@Override
+	public void close() {
+		if (session == -1)
+			throw new IllegalStateException("Not open");
+		try {
+			RemoteConnection.await(connection.request(RELEASE, session, new byte[0]));
+		} finally {
+			session = -1;
+			synchronized (written) {
+				written.clear();
+			}
+		}
+	}
+
+	/**
+	 * Sends a command without waiting for the response.
+	 */
+	public CompletableFuture<APDUResponse> exchangeAsync(APDUCommand apdu) {
+		return send(apdu).thenApply(APDUResponse::new);
+	}
+
+	private CompletableFuture<byte[]> send(APDUCommand apdu) {
+		if (session == -1)
+			throw new IllegalStateException("Not open");
+		return connection.request(EXCHANGE, session, apdu.getBytes());
+	}
+
+	@Override
+	public void writeAPDU(APDUCommand apdu) {
+		synchronized (written) {
+			written.add(send(apdu));
+		}
+	}
+
+	@Override
+	public APDUResponse readAPDU() {
+		CompletableFuture<byte[]> future;
+		synchronized (written) {
+			future = written.poll();
+		}
+		if (future == null)
+			throw new IllegalStateException("No command has been written");
+		return new APDUResponse(RemoteConnection.await(future));
+	}
+
+	@Override
+	public DeviceScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/**
+	 * Unlike {@link #exchangeAsync(APDUCommand)}, this waits while another thread holds a lease of this instance.
+	 */
+	@Override
+	public APDUResponse exchange(APDUCommand apdu) {
+		try (DeviceScheduler.Lease lease = scheduler.acquire(DeviceScheduler.Priority.INTERACTIVE)) {
+			return new APDUResponse(RemoteConnection.await(send(apdu)));
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.satergo.jledger.transport.remote;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The wire format shared by {@link RemoteConnection} and the remote device server.
+ * <p>
+ * Every frame is {@code u32 length | u8 type | u32 session | u32 request | payload}, big-endian,
+ * where the length counts every byte after the length field. Sessions are chosen by the client and are
+ * unique per connection. Requests are numbered by the client, every request receives exactly one
+ * {@link #RESPONSE} or {@link #ERROR} frame with the same request number. Many requests can be sent
+ * without waiting for responses, the requests of one session are executed in the order they were sent.
+ * <p>
+ * Requests:
+ * <ul>
+ *     <li>{@link #LIST}: no payload, response is {@code u16 count} followed by {@code u16 productId} for every device</li>
+ *     <li>{@link #LEASE}: {@code u16 deviceIndex | u32 timeoutMillis}, gives the session exclusive access to the device</li>
+ *     <li>{@link #EXCHANGE}: the command APDU, response is the response APDU</li>
+ *     <li>{@link #RELEASE}: no payload, ends the lease of the session</li>
+ * </ul>
+ * The payload of {@link #ERROR} is a UTF-8 message.
+ */
+public final class RemoteProtocol {
+	private RemoteProtocol() {}
+
+	public static final int LIST = 0x01;
+	public static final int LEASE = 0x02;
+	public static final int EXCHANGE = 0x03;
+	public static final int RELEASE = 0x04;
+
+	public static final int RESPONSE = 0x80;
+	public static final int ERROR = 0x81;
+
+	/** The size of the fields after the length field, excluding the payload */
+	public static final int HEADER_LENGTH = 1 + 4 + 4;
+	/** The maximum value of the length field */
+	public static final int MAX_FRAME_LENGTH = 0xFFFF;
+
+	/**
+	 * @return a buffer containing the frame, ready to be written
+	 */
+	public static ByteBuffer frame(int type, int session, int request, byte[] payload) {
+		if (HEADER_LENGTH + payload.length > MAX_FRAME_LENGTH)
+			throw new IllegalArgumentException("payload too long");
+		return ByteBuffer.allocate(4 + HEADER_LENGTH + payload.length)
+				.putInt(HEADER_LENGTH + payload.length)
+				.put((byte) type)
+				.putInt(session)
+				.putInt(request)
+				.put(payload)
+				.flip();
+	}
+}
@@ -0,0 +1,9 @@
+import org.jspecify.annotations.NullMarked;
+
+@NullMarked
+module com.satergo.jledger.transport.remote {
+
+	requires static org.jspecify;
+	requires com.satergo.jledger.core;
+	exports com.satergo.jledger.transport.remote;
+}
\ No newline at end of file
@@ -0,0 +1,245 @@
+package com.satergo.jledger.transport.speculos;
+
+import org.jspecify.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Client for the HTTP automation API of Speculos, which runs next to the APDU port used by {@link SpeculosLedgerDevice}.
+ * <p>
+ * It can press buttons and read the texts that have been displayed, and it can run in the background
+ * to answer prompts automatically using {@link Rule rules}:
+ * <pre>{@code
+ * automation.addRule(Rule.approve("^Approve$", Button.BOTH));
+ * automation.addRule(Rule.press("^(Confirm|Address|Path|Token|Value|Fee|Change).*", Button.RIGHT));
+ * automation.start();
+ * }</pre>
+ * The time from the first screen of a prompt until it is approved is measured, see {@link #getPromptTime()}.
+ * <p>
+ * Only devices with buttons are supported, touchscreen devices use a different API.
+ *
+ * @see <a href="https://speculos.ledger.com/user/api.html">Speculos REST API</a>
+ */
+public class SpeculosAutomation {
+
+	public enum Button {
+		LEFT, RIGHT, BOTH;
+
+		private final String path = name().toLowerCase(Locale.ROOT);
+	}
+
+	/**
+	 * When any displayed text matches {@code pattern}, the {@code buttons} are pressed in order.
+	 * @param approves whether this rule finishes a prompt
+	 */
+	public record Rule(Pattern pattern, List<Button> buttons, boolean approves) {
+		public Rule {
+			buttons = List.copyOf(buttons);
+		}
+
+		public static Rule press(String regex, Button... buttons) {
+			return new Rule(Pattern.compile(regex), List.of(buttons), false);
+		}
+
+		public static Rule approve(String regex, Button... buttons) {
+			return new Rule(Pattern.compile(regex), List.of(buttons), true);
+		}
+	}
+
+	private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+	private static final Pattern TEXT = Pattern.compile("\"text\"\\s*:\\s*\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+	private final URI baseUri;
+	private final HttpClient httpClient = HttpClient.newHttpClient();
+	private final List<Rule> rules = new CopyOnWriteArrayList<>();
+	private volatile Duration pollInterval = Duration.ofMillis(20);
+
+	private @Nullable Thread thread;
+	private volatile boolean running;
+	private volatile @Nullable Exception failure;
+
+	private final AtomicLong presses = new AtomicLong();
+	private final AtomicLong prompts = new AtomicLong();
+	private final AtomicLong promptNanos = new AtomicLong();
+	private final AtomicLong maxPromptNanos = new AtomicLong();
+
+	/**
+	 * @param port the API port of Speculos ({@code --api-port}, 5000 by default)
+	 */
+	public SpeculosAutomation(String host, int port) {
+		this.baseUri = URI.create("http://" + host + ":" + port);
+	}
+
+	public void addRule(Rule rule) {
+		rules.add(rule);
+	}
+
+	public void setPollInterval(Duration pollInterval) {
+		this.pollInterval = pollInterval;
+	}
+
+	public void pressButton(Button button) {
+		send(HttpRequest.newBuilder(baseUri.resolve("/button/" + button.path))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString("{\"action\":\"press-and-release\"}")));
+		presses.incrementAndGet();
+	}
+
+	/** The texts that have been displayed since the events were last cleared, in order */
+	public List<String> getTexts() {
+		String body = send(HttpRequest.newBuilder(baseUri.resolve("/events?stream=false")).GET());
+		ArrayList<String> texts = new ArrayList<>();
+		Matcher matcher = TEXT.matcher(body);
+		while (matcher.find())
+			texts.add(unescape(matcher.group(1)));
+		return texts;
+	}
+
+	/** Decodes the escape sequences of a JSON string */
+	static String unescape(String json) {
+		StringBuilder s = new StringBuilder(json.length());
+		for (int i = 0; i < json.length(); i++) {
+			char c = json.charAt(i);
+			if (c != '\\' || i == json.length() - 1) {
+				s.append(c);
+				continue;
+			}
+			c = json.charAt(++i);
+			switch (c) {
+				case 'b' -> s.append('\b');
+				case 'f' -> s.append('\f');
+				case 'n' -> s.append('\n');
+				case 'r' -> s.append('\r');
+				case 't' -> s.append('\t');
+				case 'u' -> {
+					if (i + 4 >= json.length())
+						throw new IllegalArgumentException("Incomplete escape sequence in " + json);
+					s.append((char) Integer.parseInt(json, i + 1, i + 5, 16));
+					i += 4;
+				}
+				default -> s.append(c);
+			}
+		}
+		return s.toString();
+	}
+
+	public void clearEvents() {
+		send(HttpRequest.newBuilder(baseUri.resolve("/events")).DELETE());
+	}
+
+	private String send(HttpRequest.Builder request) {
+		try {
+			HttpResponse<String> response = httpClient.send(request.timeout(REQUEST_TIMEOUT).build(), HttpResponse.BodyHandlers.ofString());
+			if (response.statusCode() / 100 != 2)
+				throw new IOException("HTTP " + response.statusCode() + " from " + response.uri());
+			return response.body();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Starts answering prompts in a background thread */
+	public synchronized void start() {
+		if (thread != null)
+			throw new IllegalStateException("Already started");
+		running = true;
+		failure = null;
+		thread = new Thread(this::run, "speculos-automation");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops answering prompts.
+	 * @throws RuntimeException if the background thread stopped because of an error
+	 */
+	public synchronized void stop() {
+		if (thread == null)
+			throw new IllegalStateException("Not started");
+		running = false;
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		thread = null;
+		if (failure != null)
+			throw new RuntimeException("Automation failed", failure);
+	}
+
+	private void run() {
+		long promptStart = -1;
+		try {
+			while (running) {
+				List<String> texts = getTexts();
+				// The events are cleared after every press, so any text is a new screen
+				if (promptStart == -1 && !texts.isEmpty())
+					promptStart = System.nanoTime();
+				@Nullable Rule rule = match(texts);
+				if (rule == null || rule.buttons.isEmpty()) {
+					Thread.sleep(pollInterval.toMillis());
+					continue;
+				}
+				clearEvents();
+				for (Button button : rule.buttons)
+					pressButton(button);
+				if (rule.approves) {
+					long nanos = System.nanoTime() - promptStart;
+					prompts.incrementAndGet();
+					promptNanos.addAndGet(nanos);
+					maxPromptNanos.accumulateAndGet(nanos, Math::max);
+					promptStart = -1;
+				}
+			}
+		} catch (InterruptedException e) {
+			// stopped
+		} catch (RuntimeException e) {
+			if (running) failure = e;
+		}
+	}
+
+	private @Nullable Rule match(List<String> texts) {
+		for (Rule rule : rules) {
+			for (String text : texts) {
+				if (rule.pattern.matcher(text).find())
+					return rule;
+			}
+		}
+		return null;
+	}
+
+	/** The amount of button presses made, including those made with {@link #pressButton(Button)} */
+	public long getPresses() { return presses.get(); }
+
+	/** The amount of prompts that have been approved automatically */
+	public long getPrompts() { return prompts.get(); }
+
+	/** The total time spent from the first screen of a prompt until it was approved */
+	public Duration getPromptTime() { return Duration.ofNanos(promptNanos.get()); }
+
+	/** The longest time spent from the first screen of a prompt until it was approved */
+	public Duration getMaxPromptTime() { return Duration.ofNanos(maxPromptNanos.get()); }
+
+	public void resetStatistics() {
+		presses.set(0);
+		prompts.set(0);
+		promptNanos.set(0);
+		maxPromptNanos.set(0);
+	}
+}
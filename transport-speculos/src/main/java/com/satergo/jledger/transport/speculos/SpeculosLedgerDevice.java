@@ -2,6 +2,7 @@ package com.satergo.jledger.transport.speculos;
 
 import com.satergo.jledger.APDUCommand;
 import com.satergo.jledger.APDUResponse;
+import com.satergo.jledger.DeviceScheduler;
 import com.satergo.jledger.LedgerDevice;
 import org.jspecify.annotations.Nullable;
 
@@ -11,7 +12,6 @@ import java.lang.invoke.MethodHandles;
 import java.lang.invoke.VarHandle;
 import java.net.Socket;
 import java.nio.ByteOrder;
-import java.util.concurrent.locks.ReentrantLock;
 
 public class SpeculosLedgerDevice implements LedgerDevice {
 
@@ -37,6 +37,7 @@ public class SpeculosLedgerDevice implements LedgerDevice {
 	public void open() {
 		try {
 			socket = new Socket(host, port);
+			socket.setTcpNoDelay(true);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -61,10 +62,11 @@ public class SpeculosLedgerDevice implements LedgerDevice {
 			throw new IllegalStateException("Not open");
 		try {
 			byte[] bytes = apdu.getBytes();
-			byte[] length = new byte[4];
-			INT.set(length, 0, bytes.length);
-			socket.getOutputStream().write(length);
-			socket.getOutputStream().write(bytes);
+			// One write, so that the length and the command are not delayed into separate segments
+			byte[] message = new byte[4 + bytes.length];
+			INT.set(message, 0, bytes.length);
+			System.arraycopy(bytes, 0, message, 4, bytes.length);
+			socket.getOutputStream().write(message);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -75,12 +77,12 @@ public class SpeculosLedgerDevice implements LedgerDevice {
 		if (socket == null)
 			throw new IllegalStateException("Not open");
 		try {
-			byte[] length = new byte[4];
-			if (socket.getInputStream().read(length) < 4)
+			byte[] length = socket.getInputStream().readNBytes(4);
+			if (length.length < 4)
 				throw new EOFException();
 			int dataLength = (int) INT.get(length, 0);
-			byte[] data = new byte[dataLength + 2]; // size does not include the status code, so + 2
-			if (socket.getInputStream().read(data) < dataLength)
+			byte[] data = socket.getInputStream().readNBytes(dataLength + 2); // size does not include the status code, so + 2
+			if (data.length < dataLength + 2)
 				throw new EOFException();
 			return new APDUResponse(data);
 		} catch (IOException e) {
@@ -88,16 +90,18 @@ public class SpeculosLedgerDevice implements LedgerDevice {
 		}
 	}
 
-	private final ReentrantLock lock = new ReentrantLock();
+	private final DeviceScheduler scheduler = new DeviceScheduler();
+
+	@Override
+	public DeviceScheduler getScheduler() {
+		return scheduler;
+	}
 
 	@Override
 	public APDUResponse exchange(APDUCommand apdu) {
-		lock.lock();
-		try {
+		try (DeviceScheduler.Lease lease = scheduler.acquire(DeviceScheduler.Priority.INTERACTIVE)) {
 			writeAPDU(apdu);
 			return readAPDU();
-		} finally {
-			lock.unlock();
 		}
 	}
 }
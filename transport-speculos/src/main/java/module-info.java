@@ -5,5 +5,6 @@ module com.satergo.jledger.transport.speculos {
 
 	requires static org.jspecify;
 	requires com.satergo.jledger.core;
+	requires java.net.http;
 	exports com.satergo.jledger.transport.speculos;
 }
\ No newline at end of file
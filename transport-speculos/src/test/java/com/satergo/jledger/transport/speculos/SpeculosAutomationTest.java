@@ -0,0 +1,148 @@
+package com.satergo.jledger.transport.speculos;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpeculosAutomationTest {
+
+	/** Serves the events and button endpoints of the Speculos API, button presses show the next screen */
+	private static final class StubApi {
+		final HttpServer server;
+		final List<String> events = new ArrayList<>();
+		final List<String> requests = new ArrayList<>();
+		final List<String> screens = new ArrayList<>();
+
+		StubApi() throws IOException {
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+			server.createContext("/events", this::events);
+			server.createContext("/button/", this::button);
+			server.start();
+		}
+
+		synchronized void show(String escapedText) {
+			events.add(escapedText);
+		}
+
+		private void events(HttpExchange exchange) throws IOException {
+			String body = "{}";
+			synchronized (this) {
+				requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI());
+				if (exchange.getRequestMethod().equals("DELETE")) {
+					events.clear();
+				} else {
+					StringBuilder json = new StringBuilder("{\"events\": [");
+					for (int i = 0; i < events.size(); i++)
+						json.append(i == 0 ? "" : ", ").append("{\"text\": \"").append(events.get(i)).append("\", \"x\": 0, \"y\": ").append(i * 16).append("}");
+					body = json.append("]}").toString();
+				}
+			}
+			respond(exchange, 200, body);
+		}
+
+		private void button(HttpExchange exchange) throws IOException {
+			String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+			synchronized (this) {
+				requests.add(exchange.getRequestMethod() + " " + exchange.getRequestURI() + " " + body);
+				if (!screens.isEmpty())
+					events.add(screens.remove(0));
+			}
+			respond(exchange, 200, "{}");
+		}
+
+		private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			// Always with a body like Speculos, the client cannot reuse the connection after an empty response of this server
+			exchange.sendResponseHeaders(status, bytes.length);
+			exchange.getResponseBody().write(bytes);
+			exchange.close();
+		}
+
+		synchronized List<String> requests() {
+			return List.copyOf(requests);
+		}
+	}
+
+	private StubApi api;
+	private SpeculosAutomation automation;
+
+	@BeforeEach
+	void start() throws IOException {
+		api = new StubApi();
+		automation = new SpeculosAutomation(InetAddress.getLoopbackAddress().getHostAddress(), api.server.getAddress().getPort());
+		automation.setPollInterval(Duration.ofMillis(5));
+	}
+
+	@AfterEach
+	void stop() {
+		api.server.stop(0);
+	}
+
+	@Test
+	void decodesEscapedTexts() {
+		api.show("Line\\nbreak");
+		api.show("Tab\\there \\\"quoted\\\" back\\\\slash \\/");
+		api.show("\\u00c9rgo \\u2713");
+		assertEquals(List.of("Line\nbreak", "Tab\there \"quoted\" back\\slash /", "\u00c9rgo \u2713"), automation.getTexts());
+	}
+
+	@Test
+	void pressesAndClears() {
+		automation.pressButton(SpeculosAutomation.Button.BOTH);
+		automation.clearEvents();
+		assertEquals(List.of("POST /button/both {\"action\":\"press-and-release\"}", "DELETE /events"), api.requests());
+		assertEquals(1, automation.getPresses());
+	}
+
+	@Test
+	void failsOnHttpError() {
+		api.server.removeContext("/events");
+		assertThrows(RuntimeException.class, automation::getTexts);
+	}
+
+	@Test
+	@Timeout(10)
+	void approvesPrompt() throws InterruptedException {
+		api.screens.addAll(List.of("Fee", "Approve", "Application is ready"));
+		automation.addRule(SpeculosAutomation.Rule.press("^(Amount|Fee)", SpeculosAutomation.Button.RIGHT));
+		automation.addRule(SpeculosAutomation.Rule.approve("^Approve$", SpeculosAutomation.Button.BOTH));
+		automation.start();
+		api.show("Amount");
+		while (automation.getPrompts() == 0)
+			Thread.sleep(5);
+		automation.stop();
+		assertEquals(3, automation.getPresses());
+		assertEquals(List.of("POST /button/right", "POST /button/right", "POST /button/both"), api.requests().stream()
+				.filter(request -> request.startsWith("POST")).map(request -> request.substring(0, request.indexOf(' ', 5))).toList());
+	}
+
+	/** The prompt time starts at the first screen, even when no rule matches it */
+	@Test
+	@Timeout(10)
+	void promptTimeStartsAtFirstScreen() throws InterruptedException {
+		automation.addRule(SpeculosAutomation.Rule.approve("^Approve$", SpeculosAutomation.Button.BOTH));
+		automation.start();
+		api.show("Review transaction");
+		Thread.sleep(1000);
+		api.show("Approve");
+		while (automation.getPrompts() == 0)
+			Thread.sleep(5);
+		automation.stop();
+		// Some margin for the polls that notice the first screen late
+		assertTrue(automation.getPromptTime().toMillis() >= 500, "prompt time " + automation.getPromptTime());
+		assertEquals(automation.getPromptTime(), automation.getMaxPromptTime());
+	}
+}